@@ -0,0 +1,63 @@
+package com.zayn.dianping.config;
+
+import com.zayn.dianping.service.IShopService;
+import com.zayn.dianping.service.IVoucherService;
+import com.zayn.dianping.utils.BloomFilters;
+import com.zayn.dianping.utils.ShopTypeCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动时初始化布隆过滤器、加载商铺类型、预热秒杀券、缓存预热
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午11:05
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CacheWarmUpRunner implements ApplicationRunner {
+    
+    private final IShopService shopService;
+    private final BloomFilters bloomFilters;
+    private final ShopTypeCache shopTypeCache;
+    private final IVoucherService voucherService;
+    
+    @Value("${dianping.cache.warm-up.shop-limit:200}")
+    private int shopLimit;
+    
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            bloomFilters.init();
+        } catch (Exception e) {
+            // 初始化失败时过滤器保持放行
+            log.error("布隆过滤器初始化失败", e);
+        }
+        
+        try {
+            shopTypeCache.load();
+        } catch (Exception e) {
+            // 加载失败不影响启动，首次访问时再加载
+            log.error("商铺类型加载失败", e);
+        }
+        
+        try {
+            voucherService.preloadSeckillVouchers();
+        } catch (Exception e) {
+            // 预热失败时秒杀返回优惠券不存在，需要重新发布
+            log.error("秒杀券预热失败", e);
+        }
+        
+        try {
+            shopService.warmUpHotShops(shopLimit);
+        } catch (Exception e) {
+            // 预热失败不影响启动，未命中时会同步加载
+            log.error("缓存预热失败", e);
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package com.zayn.dianping.config;
 
+import com.zayn.dianping.interceptor.AdminInterceptor;
 import com.zayn.dianping.interceptor.LoginInterceptor;
+import com.zayn.dianping.interceptor.RateLimitInterceptor;
+import com.zayn.dianping.interceptor.RateLimitInterceptor.Rule;
 import com.zayn.dianping.interceptor.RefreshTokenInterceptor;
+import com.zayn.dianping.utils.RateLimiter;
+import com.zayn.dianping.utils.SessionCache;
+import com.zayn.dianping.utils.SignedTokens;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.time.Duration;
+import java.util.List;
+
 /**
  * @author zayn
  * * @date 2024/7/18/下午7:45
@@ -16,11 +25,41 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @RequiredArgsConstructor
 public class MVCConfig implements WebMvcConfigurer {
     
-    private final StringRedisTemplate stringRedisTemplate;
+    private final SessionCache sessionCache;
+    private final SignedTokens signedTokens;
+    private final RateLimiter rateLimiter;
+    
+    // 运维接口token，未配置时运维接口不可用
+    @Value("${dianping.admin.token:}")
+    private String adminToken;
+    
+    // 反向代理传递客户端ip的请求头，例如 X-Real-IP，为空时使用连接的ip
+    @Value("${dianping.rate-limit.client-ip-header:}")
+    private String clientIpHeader;
+    
+    // 发送验证码：每个手机号每分钟次数
+    @Value("${dianping.rate-limit.code.per-phone:1}")
+    private int codePerPhone;
+    
+    // 发送验证码：每个ip每分钟次数
+    @Value("${dianping.rate-limit.code.per-ip:10}")
+    private int codePerIp;
+    
+    // 登录：每个ip每分钟次数
+    @Value("${dianping.rate-limit.login.per-ip:20}")
+    private int loginPerIp;
+    
+    // 秒杀：每个用户每秒次数
+    @Value("${dianping.rate-limit.seckill.per-user:5}")
+    private int seckillPerUser;
+    
+    // 秒杀：每个ip每秒次数
+    @Value("${dianping.rate-limit.seckill.per-ip:50}")
+    private int seckillPerIp;
     
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate))
+        registry.addInterceptor(new RefreshTokenInterceptor(sessionCache, signedTokens))
                 .addPathPatterns("/**")
                 .order(0);
         registry.addInterceptor(new LoginInterceptor())
@@ -31,8 +70,36 @@ public class MVCConfig implements WebMvcConfigurer {
                         "shop-type/**",
                         "blog/hot",
                         "/user/code",
-                        "/user/login"
+                        "/user/login",
+                        // 运维接口由 AdminInterceptor 校验
+                        "/bloom/**",
+                        "/cache/metrics",
+                        "/rate-limit/metrics"
                 )
                 .order(1);
+        // 运维接口：全表扫描、全量刷新、查看和清空指标；shop-type/** 对未登录用户放行，刷新接口单独校验
+        registry.addInterceptor(new AdminInterceptor(adminToken))
+                .addPathPatterns("/bloom/**", "/shop-type/refresh", "/cache/metrics", "/rate-limit/metrics")
+                .order(1);
+        // 限流在登录校验之后：秒杀需要登录，未登录的请求被拦截，不会访问redis
+        // 发送验证码和登录对未登录用户放行，每个请求都会执行限流脚本，被拒绝的客户端在等待时间内由本地直接拒绝
+        registry.addInterceptor(rateLimit(
+                        Rule.perParam("code:phone", "phone", codePerPhone, Duration.ofMinutes(1)),
+                        Rule.perIp("code:ip", codePerIp, Duration.ofMinutes(1))))
+                .addPathPatterns("/user/code")
+                .order(2);
+        registry.addInterceptor(rateLimit(
+                        Rule.perIp("login:ip", loginPerIp, Duration.ofMinutes(1))))
+                .addPathPatterns("/user/login")
+                .order(2);
+        registry.addInterceptor(rateLimit(
+                        Rule.perUser("seckill:user", seckillPerUser, Duration.ofSeconds(1)),
+                        Rule.perIp("seckill:ip", seckillPerIp, Duration.ofSeconds(1))))
+                .addPathPatterns("/voucher-order/seckill/**")
+                .order(2);
+    }
+    
+    private RateLimitInterceptor rateLimit(Rule... rules) {
+        return new RateLimitInterceptor(rateLimiter, clientIpHeader, List.of(rules));
     }
 }
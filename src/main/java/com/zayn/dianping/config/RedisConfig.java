@@ -1,11 +1,27 @@
 package com.zayn.dianping.config;
 
+import com.zayn.dianping.utils.BloomFilters;
+import com.zayn.dianping.utils.NearCache;
+import com.zayn.dianping.utils.SeckillGate;
+import com.zayn.dianping.utils.SessionCache;
+import com.zayn.dianping.utils.TokenRevocations;
+import com.zayn.dianping.utils.ShopTypeCache;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import static com.zayn.dianping.utils.RedisConstants.BLOOM_ADD_CHANNEL;
+import static com.zayn.dianping.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.zayn.dianping.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.zayn.dianping.utils.RedisConstants.SESSION_INVALIDATE_CHANNEL;
+import static com.zayn.dianping.utils.RedisConstants.SESSION_REVOKED_CHANNEL;
+import static com.zayn.dianping.utils.RedisConstants.SHOP_TYPE_REFRESH_CHANNEL;
 
 /**
  * redisson 配置类
@@ -30,4 +46,27 @@ public class RedisConfig {
               .setPassword(REDIS_PASSWORD);
         return Redisson.create();
     }
+    
+    /**
+     * redis 发布订阅监听容器
+     * 订阅一级缓存失效广播、商铺类型刷新广播、秒杀售罄广播、登录会话失效广播、无状态token撤销广播、布隆过滤器新增广播
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       NearCache nearCache,
+                                                                       ShopTypeCache shopTypeCache,
+                                                                       SeckillGate seckillGate,
+                                                                       SessionCache sessionCache,
+                                                                       TokenRevocations tokenRevocations,
+                                                                       BloomFilters bloomFilters) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(nearCache, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        container.addMessageListener(shopTypeCache, new ChannelTopic(SHOP_TYPE_REFRESH_CHANNEL));
+        container.addMessageListener(seckillGate, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+        container.addMessageListener(sessionCache, new ChannelTopic(SESSION_INVALIDATE_CHANNEL));
+        container.addMessageListener(tokenRevocations, new ChannelTopic(SESSION_REVOKED_CHANNEL));
+        container.addMessageListener(bloomFilters, new ChannelTopic(BLOOM_ADD_CHANNEL));
+        return container;
+    }
 }
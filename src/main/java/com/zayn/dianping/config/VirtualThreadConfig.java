@@ -0,0 +1,30 @@
+package com.zayn.dianping.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程模式
+ * dianping.threads.virtual=true 时tomcat每个请求一个虚拟线程，请求线程阻塞在redis、数据库或重试等待上时不占用平台线程，
+ * 单节点可以同时处理更多的秒杀连接
+ * 后台线程见 {@link com.zayn.dianping.utils.WorkerThreads}，pinning诊断见 {@link com.zayn.dianping.utils.PinningMonitor}
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:25
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "dianping.threads.virtual", havingValue = "true")
+public class VirtualThreadConfig {
+    
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        log.info("tomcat使用虚拟线程处理请求");
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
@@ -0,0 +1,35 @@
+package com.zayn.dianping.controller;
+
+import com.zayn.dianping.domain.dto.Result;
+import com.zayn.dianping.utils.BloomFilters;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 布隆过滤器控制器
+ */
+@RestController
+@RequestMapping("/bloom")
+@RequiredArgsConstructor
+public class BloomFilterController {
+    
+    private final BloomFilters bloomFilters;
+    
+    /**
+     * 从数据库全量重建布隆过滤器
+     * 全表扫描，只允许运维调用，见 AdminInterceptor
+     *
+     * @param name shop 或 voucher
+     * @return 无
+     */
+    @PostMapping("rebuild/{name}")
+    public Result rebuild(@PathVariable("name") String name) {
+        if (!bloomFilters.rebuild(name)) {
+            return Result.fail("布隆过滤器不存在");
+        }
+        return Result.ok();
+    }
+}
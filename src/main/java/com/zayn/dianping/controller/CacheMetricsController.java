@@ -0,0 +1,47 @@
+package com.zayn.dianping.controller;
+
+import com.zayn.dianping.domain.dto.Result;
+import com.zayn.dianping.utils.CacheClient;
+import com.zayn.dianping.utils.CacheMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 缓存指标控制器，运维接口，由 AdminInterceptor 校验
+ */
+@RestController
+@RequestMapping("/cache/metrics")
+@RequiredArgsConstructor
+public class CacheMetricsController {
+    
+    private final CacheMetrics cacheMetrics;
+    private final CacheClient cacheClient;
+    
+    /**
+     * 查看各key前缀的缓存指标
+     *
+     * @return 前缀 -> 指标
+     */
+    @GetMapping
+    public Result metrics() {
+        Map<String, Object> snapshot = cacheMetrics.snapshot();
+        snapshot.put("rebuild_rejected_total", cacheClient.getRebuildRejectedCount());
+        return Result.ok(snapshot);
+    }
+    
+    /**
+     * 清空缓存指标，调整TTL后重新统计
+     *
+     * @return 无
+     */
+    @DeleteMapping
+    public Result reset() {
+        cacheMetrics.reset();
+        return Result.ok();
+    }
+}
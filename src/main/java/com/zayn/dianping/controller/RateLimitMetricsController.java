@@ -0,0 +1,41 @@
+package com.zayn.dianping.controller;
+
+import com.zayn.dianping.domain.dto.Result;
+import com.zayn.dianping.utils.RateLimiter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 限流指标控制器，运维接口，由 AdminInterceptor 校验
+ */
+@RestController
+@RequestMapping("/rate-limit/metrics")
+@RequiredArgsConstructor
+public class RateLimitMetricsController {
+    
+    private final RateLimiter rateLimiter;
+    
+    /**
+     * 查看各限流规则的放行、拒绝次数
+     *
+     * @return 规则 -> 指标
+     */
+    @GetMapping
+    public Result metrics() {
+        return Result.ok(rateLimiter.snapshot());
+    }
+    
+    /**
+     * 清空限流指标
+     *
+     * @return 无
+     */
+    @DeleteMapping
+    public Result reset() {
+        rateLimiter.reset();
+        return Result.ok();
+    }
+}
@@ -6,10 +6,13 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.zayn.dianping.domain.dto.Result;
 import com.zayn.dianping.entity.Shop;
 import com.zayn.dianping.service.IShopService;
+import com.zayn.dianping.utils.BloomFilters;
 import com.zayn.dianping.utils.SystemConstants;
 import jakarta.annotation.Resource;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 
 /**
  * 商铺控制器
@@ -21,6 +24,9 @@ public class ShopController {
     @Resource
     public IShopService shopService;
     
+    @Resource
+    private BloomFilters bloomFilters;
+    
     /**
      * 根据id查询商铺信息
      * 添加redis缓存
@@ -33,6 +39,21 @@ public class ShopController {
         return shopService.queryById(id);
     }
     
+    /**
+     * 根据id批量查询商铺信息
+     *
+     * @param ids 商铺id列表，逗号分隔，最多 {@link SystemConstants#MAX_BATCH_QUERY_SIZE} 个
+     * @return 商铺列表
+     */
+    @GetMapping("/list")
+    public Result queryShopByIds(@RequestParam("ids") List<Long> ids) {
+        // 限制一次MGET和查库的数量
+        if (ids.size() > SystemConstants.MAX_BATCH_QUERY_SIZE) {
+            return Result.fail("一次最多查询" + SystemConstants.MAX_BATCH_QUERY_SIZE + "个商铺");
+        }
+        return shopService.queryByIds(ids);
+    }
+    
     /**
      * 新增商铺信息
      *
@@ -43,6 +64,8 @@ public class ShopController {
     public Result saveShop(@RequestBody Shop shop) {
         // 写入数据库
         shopService.save(shop);
+        // 加入布隆过滤器
+        bloomFilters.shop().add(shop.getId());
         // 返回店铺id
         return Result.ok(shop.getId());
     }
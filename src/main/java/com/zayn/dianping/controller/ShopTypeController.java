@@ -5,8 +5,10 @@ import com.zayn.dianping.domain.dto.Result;
 import com.zayn.dianping.service.IShopTypeService;
 import jakarta.annotation.Resource;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * 商铺类型控制器
@@ -17,8 +19,28 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
     
+    /**
+     * 商铺类型列表，支持ETag，列表未变化时返回304
+     *
+     * @param request 请求
+     * @return 商铺类型列表
+     */
     @GetMapping("list")
-    public Result queryTypeList() {
+    public Result queryTypeList(WebRequest request) {
+        if (request.checkNotModified(typeService.getTypeListVersion())) {
+            return null;
+        }
         return typeService.getTypeList();
     }
+    
+    /**
+     * 商铺类型变更后刷新缓存，运维接口，由 AdminInterceptor 校验
+     *
+     * @return 无
+     */
+    @PostMapping("refresh")
+    public Result refreshTypeList() {
+        typeService.refreshTypeList();
+        return Result.ok();
+    }
 }
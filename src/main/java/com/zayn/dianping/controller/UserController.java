@@ -54,9 +54,18 @@ public class UserController {
      * @return 无
      */
     @PostMapping("/logout")
-    public Result logout() {
-        // TODO 实现登出功能
-        return Result.fail("功能未完成");
+    public Result logout(@RequestHeader(value = "Authorization", required = false) String token) {
+        return userService.logout(token);
+    }
+    
+    /**
+     * 退出全部设备的登录
+     *
+     * @return 撤销的会话数
+     */
+    @PostMapping("/logout/all")
+    public Result logoutAll() {
+        return userService.logoutAll();
     }
     
     @GetMapping("/me")
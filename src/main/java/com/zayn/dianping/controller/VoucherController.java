@@ -4,6 +4,7 @@ package com.zayn.dianping.controller;
 import com.zayn.dianping.domain.dto.Result;
 import com.zayn.dianping.entity.Voucher;
 import com.zayn.dianping.service.IVoucherService;
+import com.zayn.dianping.utils.BloomFilters;
 import jakarta.annotation.Resource;
 import org.springframework.web.bind.annotation.*;
 
@@ -20,6 +21,9 @@ public class VoucherController {
     @Resource
     private IVoucherService voucherService;
     
+    @Resource
+    private BloomFilters bloomFilters;
+    
     /**
      * 新增普通券
      *
@@ -29,6 +33,7 @@ public class VoucherController {
     @PostMapping
     public Result addVoucher(@RequestBody Voucher voucher) {
         voucherService.save(voucher);
+        bloomFilters.voucher().add(voucher.getId());
         return Result.ok(voucher.getId());
     }
     
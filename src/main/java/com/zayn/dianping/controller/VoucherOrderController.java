@@ -4,10 +4,8 @@ package com.zayn.dianping.controller;
 import com.zayn.dianping.domain.dto.Result;
 import com.zayn.dianping.service.IVoucherOrderService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 /**
  * 优惠券控制器
@@ -29,4 +27,17 @@ public class VoucherOrderController {
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return voucherOrderService.seckillVoucher(voucherId);
     }
+    
+    /**
+     * 查询秒杀订单状态
+     *
+     * @param orderId 订单id
+     * @param wait    排队中时最长等待的毫秒数，0表示立即返回
+     * @return QUEUED 排队中，PERSISTED 下单成功，FAILED 下单失败
+     */
+    @GetMapping("{id}/status")
+    public DeferredResult<Result> queryOrderStatus(@PathVariable("id") Long orderId,
+                                                   @RequestParam(value = "wait", defaultValue = "0") Long wait) {
+        return voucherOrderService.queryOrderStatus(orderId, wait);
+    }
 }
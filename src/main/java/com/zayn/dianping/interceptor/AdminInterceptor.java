@@ -0,0 +1,40 @@
+package com.zayn.dianping.interceptor;
+
+import cn.hutool.core.util.StrUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 运维接口校验
+ * 请求头 X-Admin-Token 和配置的 dianping.admin.token 一致才放行，未配置时运维接口全部拒绝
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:51
+ */
+public class AdminInterceptor implements HandlerInterceptor {
+    private static final String HEADER = "X-Admin-Token";
+    
+    private final byte[] token;
+    
+    /**
+     * @param token 运维token，为空时拒绝所有请求
+     */
+    public AdminInterceptor(String token) {
+        this.token = StrUtil.isBlank(token) ? null : token.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        String header = request.getHeader(HEADER);
+        // 常量时间比较
+        if (token == null || header == null || !MessageDigest.isEqual(token, header.getBytes(StandardCharsets.UTF_8))) {
+            response.setStatus(403);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,118 @@
+package com.zayn.dianping.interceptor;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.zayn.dianping.domain.dto.Result;
+import com.zayn.dianping.domain.dto.UserDTO;
+import com.zayn.dianping.utils.RateLimiter;
+import com.zayn.dianping.utils.UserHolder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 限流拦截器
+ * 按路由配置一组规则，依次判断，任一规则拒绝返回429和Retry-After
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:35
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+    private final RateLimiter rateLimiter;
+    private final String clientIpHeader;
+    private final List<Rule> rules;
+    
+    /**
+     * @param rateLimiter    限流器
+     * @param clientIpHeader 反向代理传递客户端ip的请求头，例如 X-Real-IP，为空时使用连接的ip
+     * @param rules          限流规则
+     */
+    public RateLimitInterceptor(RateLimiter rateLimiter, String clientIpHeader, List<Rule> rules) {
+        this.rateLimiter = rateLimiter;
+        this.clientIpHeader = clientIpHeader;
+        this.rules = rules;
+    }
+    
+    /**
+     * 限流维度
+     */
+    public enum Dimension {
+        IP, USER, PARAM
+    }
+    
+    /**
+     * 限流规则，每个周期最多 limit 次
+     *
+     * @param name      规则名称，也是redis key的一部分
+     * @param dimension 限流维度
+     * @param param     PARAM维度的请求参数名
+     * @param limit     每个周期允许的请求数
+     * @param period    周期
+     */
+    public record Rule(String name, Dimension dimension, String param, int limit, Duration period) {
+        public static Rule perIp(String name, int limit, Duration period) {
+            return new Rule(name, Dimension.IP, null, limit, period);
+        }
+        
+        public static Rule perUser(String name, int limit, Duration period) {
+            return new Rule(name, Dimension.USER, null, limit, period);
+        }
+        
+        public static Rule perParam(String name, String param, int limit, Duration period) {
+            return new Rule(name, Dimension.PARAM, param, limit, period);
+        }
+    }
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        for (Rule rule : rules) {
+            String client = client(rule, request);
+            if (client == null) {
+                continue;
+            }
+            long waitMillis = rateLimiter.tryAcquire(rule.name(), client, rule.limit(), rule.period().toMillis());
+            if (waitMillis > 0) {
+                reject(response, waitMillis);
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 客户端标识，取不到时跳过该规则
+     */
+    private String client(Rule rule, HttpServletRequest request) {
+        return switch (rule.dimension()) {
+            case IP -> clientIp(request);
+            case USER -> {
+                UserDTO user = UserHolder.getUser();
+                yield user == null ? null : user.getId().toString();
+            }
+            case PARAM -> StrUtil.emptyToNull(request.getParameter(rule.param()));
+        };
+    }
+    
+    private String clientIp(HttpServletRequest request) {
+        if (StrUtil.isNotBlank(clientIpHeader)) {
+            String ip = request.getHeader(clientIpHeader);
+            if (StrUtil.isNotBlank(ip)) {
+                // X-Forwarded-For 取第一个
+                return StrUtil.subBefore(ip, ',', false).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+    
+    private static void reject(HttpServletResponse response, long waitMillis) throws Exception {
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf((waitMillis + 999) / 1000));
+        response.setContentType("application/json");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(JSONUtil.toJsonStr(Result.fail("请求过于频繁，请稍后再试")));
+    }
+}
@@ -1,27 +1,25 @@
 package com.zayn.dianping.interceptor;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.zayn.dianping.domain.dto.UserDTO;
-import com.zayn.dianping.utils.RedisConstants;
+import com.zayn.dianping.utils.SessionCache;
+import com.zayn.dianping.utils.SignedTokens;
 import com.zayn.dianping.utils.UserHolder;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.web.servlet.HandlerInterceptor;
-
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 /**
  * @author zayn
  * * @date 2024/7/18/下午7:38
  */
-public class RefreshTokenInterceptor implements HandlerInterceptor {
-    private final StringRedisTemplate stringRedisTemplate;
+public class RefreshTokenInterceptor implements AsyncHandlerInterceptor {
+    private final SessionCache sessionCache;
+    private final SignedTokens signedTokens;
     
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    public RefreshTokenInterceptor(SessionCache sessionCache, SignedTokens signedTokens) {
+        this.sessionCache = sessionCache;
+        this.signedTokens = signedTokens;
     }
     
     /**
@@ -33,19 +31,14 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
         String token = request.getHeader("Authorization");
         if (StrUtil.isBlank(token)) return true;
         
-        // 获取用户
-        String key = RedisConstants.LOGIN_USER_KEY + token;
-        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
-        if (entries.isEmpty()) {
+        // 获取用户：无状态模式本地验签；否则优先本地会话缓存，token续期由会话缓存按需批量完成
+        UserDTO userDTO = signedTokens.enabled() ? signedTokens.verify(token) : sessionCache.get(token);
+        if (userDTO == null) {
             return true;
         }
         
         // 将用户信息保存到ThreadLocal
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(entries, new UserDTO(), false);
         UserHolder.saveUser(userDTO);
-        
-        // 刷新token
-        stringRedisTemplate.expire(key, RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
         return true;
     }
     
@@ -62,4 +55,13 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         UserHolder.removeUser();
     }
+    
+    /**
+     * 异步请求（长轮询）开始后当前线程立即返回，不会调用afterCompletion，在这里清理ThreadLocal
+     * 异步结果返回时会重新调用preHandle
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        UserHolder.removeUser();
+    }
 }
@@ -2,6 +2,10 @@ package com.zayn.dianping.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.zayn.dianping.entity.Shop;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
 
 /**
  * <p>
@@ -9,5 +13,35 @@ import com.zayn.dianping.entity.Shop;
  * </p>
  */
 public interface ShopMapper extends BaseMapper<Shop> {
-
+    
+    /**
+     * 批量更新计数字段，一条 UPDATE ... CASE 语句
+     * 字段为null的保持原值
+     *
+     * @param shops 商铺id和计数字段
+     * @return 影响行数
+     */
+    @Update("""
+            <script>
+            UPDATE tb_shop SET
+            sold = CASE id
+            <foreach collection="shops" item="s">
+                WHEN #{s.id} THEN <choose><when test="s.sold != null">#{s.sold}</when><otherwise>sold</otherwise></choose>
+            </foreach>
+            END,
+            comments = CASE id
+            <foreach collection="shops" item="s">
+                WHEN #{s.id} THEN <choose><when test="s.comments != null">#{s.comments}</when><otherwise>comments</otherwise></choose>
+            </foreach>
+            END,
+            score = CASE id
+            <foreach collection="shops" item="s">
+                WHEN #{s.id} THEN <choose><when test="s.score != null">#{s.score}</when><otherwise>score</otherwise></choose>
+            </foreach>
+            END
+            WHERE id IN
+            <foreach collection="shops" item="s" open="(" separator="," close=")">#{s.id}</foreach>
+            </script>
+            """)
+    int updateCountersBatch(@Param("shops") List<Shop> shops);
 }
@@ -2,6 +2,10 @@ package com.zayn.dianping.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.zayn.dianping.entity.User;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -9,5 +13,19 @@ import com.zayn.dianping.entity.User;
  * </p>
  */
 public interface UserMapper extends BaseMapper<User> {
-
+    
+    /**
+     * 批量注册用户，一条多值 INSERT
+     * 手机号已注册（其他节点并发注册）的忽略，插入后按手机号回查
+     *
+     * @param users 用户
+     * @return 实际插入的行数
+     */
+    @Insert("""
+            <script>
+            INSERT IGNORE INTO tb_user (phone, nick_name) VALUES
+            <foreach collection="users" item="u" separator=",">(#{u.phone}, #{u.nickName})</foreach>
+            </script>
+            """)
+    int insertIgnoreBatch(@Param("users") List<User> users);
 }
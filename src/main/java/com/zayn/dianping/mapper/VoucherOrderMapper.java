@@ -2,6 +2,10 @@ package com.zayn.dianping.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.zayn.dianping.entity.VoucherOrder;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -9,5 +13,19 @@ import com.zayn.dianping.entity.VoucherOrder;
  * </p>
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
-
+    
+    /**
+     * 批量插入订单，一条多值 INSERT
+     * 主键或 uk_user_voucher 重复的订单忽略（重复投递、一人多单）
+     *
+     * @param orders 订单
+     * @return 实际插入的行数
+     */
+    @Insert("""
+            <script>
+            INSERT IGNORE INTO tb_voucher_order (id, user_id, voucher_id) VALUES
+            <foreach collection="orders" item="o" separator=",">(#{o.id}, #{o.userId}, #{o.voucherId})</foreach>
+            </script>
+            """)
+    int insertIgnoreBatch(@Param("orders") List<VoucherOrder> orders);
 }
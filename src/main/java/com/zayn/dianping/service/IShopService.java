@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.zayn.dianping.domain.dto.Result;
 import com.zayn.dianping.entity.Shop;
 
+import java.util.List;
+
 /**
  * <p>
  * 服务类
@@ -13,7 +15,11 @@ public interface IShopService extends IService<Shop> {
     
     Result queryById(Long id);
     
+    Result queryByIds(List<Long> ids);
+    
     Result update(Shop shop);
     
     Result queryPage(Integer typeId, Integer current);
+    
+    void warmUpHotShops(int limit);
 }
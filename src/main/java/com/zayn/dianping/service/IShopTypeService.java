@@ -12,4 +12,8 @@ import com.zayn.dianping.entity.ShopType;
 public interface IShopTypeService extends IService<ShopType> {
     
     Result getTypeList();
+    
+    String getTypeListVersion();
+    
+    void refreshTypeList();
 }
@@ -17,4 +17,8 @@ public interface IUserService extends IService<User> {
     Result sendCode(String phone, HttpSession session);
     
     Result login(LoginFormDTO loginForm, HttpSession session);
+    
+    Result logout(String token);
+    
+    Result logoutAll();
 }
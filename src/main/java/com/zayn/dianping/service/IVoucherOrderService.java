@@ -3,6 +3,9 @@ package com.zayn.dianping.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.zayn.dianping.domain.dto.Result;
 import com.zayn.dianping.entity.VoucherOrder;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,5 +16,9 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
     
     Result seckillVoucher(Long voucherId);
     
-    void createVoucherOrder(VoucherOrder voucherOrder);
+    DeferredResult<Result> queryOrderStatus(Long orderId, long waitMillis);
+    
+    boolean createVoucherOrder(VoucherOrder voucherOrder);
+    
+    int createVoucherOrders(Long voucherId, List<VoucherOrder> orders);
 }
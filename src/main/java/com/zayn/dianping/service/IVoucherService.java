@@ -14,4 +14,6 @@ public interface IVoucherService extends IService<Voucher> {
     Result queryVoucherOfShop(Long shopId);
     
     void addSeckillVoucher(Voucher voucher);
+    
+    void preloadSeckillVouchers();
 }
@@ -2,7 +2,6 @@ package com.zayn.dianping.service.impl;
 
 
 import cn.hutool.core.lang.TypeReference;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.zayn.dianping.domain.dto.Result;
@@ -10,11 +9,20 @@ import com.zayn.dianping.entity.Shop;
 import com.zayn.dianping.mapper.ShopMapper;
 import com.zayn.dianping.service.IShopService;
 import com.zayn.dianping.utils.CacheClient;
+import com.zayn.dianping.utils.ShopCounterWriteBehind;
 import com.zayn.dianping.utils.SystemConstants;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.zayn.dianping.utils.RedisConstants.*;
 
@@ -25,7 +33,15 @@ import static com.zayn.dianping.utils.RedisConstants.*;
 @RequiredArgsConstructor
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
     
+    private static final Type SHOP_LIST_TYPE = new TypeReference<List<Shop>>() {
+    }.getType();
+    
     private final CacheClient cacheClient;
+    private final ShopCounterWriteBehind shopCounterWriteBehind;
+    
+    // 是否使用逻辑过期方案，开启后启动时预热热点商铺
+    @Value("${dianping.cache.shop.logical-expire:false}")
+    private boolean logicalExpire;
     
     /**
      * 根据id查询商铺信息
@@ -43,12 +59,11 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 //        Shop shop
 //                = cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
         
-        // 互斥锁解决缓存击穿方案
-        Shop shop
-                = cacheClient.queryWithMutex(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.MINUTES);
-        
-        // 逻辑过期解决缓存击穿方案
-//        Shop shop = cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
+        Shop shop = logicalExpire
+                // 逻辑过期解决缓存击穿方案
+                ? cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.MINUTES)
+                // 互斥锁解决缓存击穿方案
+                : cacheClient.queryWithMutex(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.MINUTES);
         
         // 查询失败
         if (shop == null) {
@@ -59,8 +74,60 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
     
+    /**
+     * 根据id批量查询商铺信息
+     * 一次MGET，未命中的id一次查库
+     *
+     * @param ids 商铺id列表
+     * @return 商铺列表，按id顺序，不存在的id跳过
+     */
+    @Override
+    public Result queryByIds(List<Long> ids) {
+        if (logicalExpire) {
+            // 逻辑过期数据结构不同，逐个查询
+            List<Shop> shops = new ArrayList<>();
+            for (Long id : ids) {
+                Shop shop = cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.MINUTES);
+                if (shop != null) {
+                    shops.add(shop);
+                }
+            }
+            return Result.ok(shops);
+        }
+        
+        Map<Long, Shop> shops
+                = cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::listByIdsAsMap, 20L, TimeUnit.MINUTES);
+        return Result.ok(new ArrayList<>(shops.values()));
+    }
+    
+    /**
+     * 批量查询数据库
+     *
+     * @param ids 商铺id
+     * @return id -> 商铺
+     */
+    private Map<Long, Shop> listByIdsAsMap(Collection<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+    }
+    
+    /**
+     * 预热热点商铺（按销量），只在逻辑过期方案下需要
+     *
+     * @param limit 预热数量
+     */
+    @Override
+    public void warmUpHotShops(int limit) {
+        if (!logicalExpire) {
+            return;
+        }
+        List<Shop> shops = query().orderByDesc("sold").last("limit " + limit).list();
+        Map<Long, Shop> values = shops.stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+        cacheClient.warmUp(CACHE_SHOP_KEY, values, 20L, TimeUnit.MINUTES);
+    }
+    
     /**
      * 更新商铺信息
+     * 开启异步写回时，计数字段（销量、评论数、评分）先写入redis，定时合并写库
      *
      * @param shop 商铺数据
      * @return 更新后的商铺数据
@@ -72,6 +139,19 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             return Result.fail("商铺id不能为空");
         }
         
+        if (shopCounterWriteBehind.isEnabled() && ShopCounterWriteBehind.hasCounters(shop)) {
+            shopCounterWriteBehind.submit(new Shop()
+                    .setId(id)
+                    .setSold(shop.getSold())
+                    .setComments(shop.getComments())
+                    .setScore(shop.getScore()));
+            // 只更新了计数字段，写库和删除缓存都由异步写回完成
+            if (!ShopCounterWriteBehind.hasOtherColumns(shop)) {
+                return Result.ok();
+            }
+            shop.setSold(null).setComments(null).setScore(null);
+        }
+        
         // 更新数据库
         updateById(shop);
         
@@ -97,12 +177,10 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         String cacheKey = CACHE_SHOP_TYPE_KEY + typeId + ":" + current;
         
         // 查询缓存
-        String cachedPage = cacheClient.get(cacheKey);
+        List<Shop> cachedRecords = cacheClient.get(cacheKey, SHOP_LIST_TYPE);
         // 命中缓存
-        if (cachedPage != null) {
-            Page<Shop> page = JSONUtil.toBean(cachedPage, new TypeReference<Page<Shop>>() {
-            }, true);
-            return Result.ok(page.getRecords());
+        if (cachedRecords != null) {
+            return Result.ok(cachedRecords);
         }
         
         // 查询数据库
@@ -110,7 +188,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
                 .eq("type_id", typeId)
                 .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
         
-        cacheClient.set(cacheKey, JSONUtil.toJsonStr(page), CACHE_SHOP_TYPE_TTL, TimeUnit.MINUTES);
+        // 只缓存当前页数据
+        cacheClient.set(cacheKey, page.getRecords(), CACHE_SHOP_TYPE_TTL, TimeUnit.MINUTES);
         
         return Result.ok(page.getRecords());
     }
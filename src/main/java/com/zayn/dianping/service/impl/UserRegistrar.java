@@ -0,0 +1,159 @@
+package com.zayn.dianping.service.impl;
+
+import cn.hutool.core.util.RandomUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.zayn.dianping.entity.User;
+import com.zayn.dianping.mapper.UserMapper;
+import com.zayn.dianping.utils.WorkerThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.zayn.dianping.utils.SystemConstants.USER_NICK_NAME_PREFIX;
+
+/**
+ * 首次登录自动注册
+ * 活动期间大量新手机号同时登录，逐个 INSERT 会让登录卡在数据库上
+ * 注册请求进入队列，一个线程攒够N个或等待T毫秒后一条多值 INSERT IGNORE 写入，再按手机号一次回查id
+ * 同一手机号并发注册（本节点或其他节点）由唯一索引去重，回查得到的是先注册成功的那一条
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:33
+ */
+@Slf4j
+@Component
+public class UserRegistrar {
+    private static final long POLL_MILLIS = 1000L;
+    
+    private final UserMapper userMapper;
+    private final WorkerThreads workerThreads;
+    private final BlockingQueue<Registration> queue = new LinkedBlockingQueue<>();
+    private volatile boolean running = true;
+    
+    // 每批最多注册的用户数
+    @Value("${dianping.login.register.batch-size:100}")
+    private int batchSize;
+    
+    // 攒批最长等待时间
+    @Value("${dianping.login.register.batch-wait-millis:10}")
+    private long batchWaitMillis;
+    
+    // 登录请求等待注册完成的最长时间
+    @Value("${dianping.login.register.timeout-millis:3000}")
+    private long timeoutMillis;
+    
+    private ExecutorService executor;
+    
+    public UserRegistrar(UserMapper userMapper, WorkerThreads workerThreads) {
+        this.userMapper = userMapper;
+        this.workerThreads = workerThreads;
+    }
+    
+    @PostConstruct
+    private void init() {
+        executor = Executors.newSingleThreadExecutor(workerThreads.threadFactory("user-register-"));
+        executor.submit(this::run);
+    }
+    
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        // 处理完队列中的注册请求后退出
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(POLL_MILLIS + timeoutMillis, TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * 注册用户，等待所在批次写入完成
+     *
+     * @param phone 手机号
+     * @return 用户，手机号已注册时返回已有用户
+     */
+    public User register(String phone) {
+        Registration registration = new Registration(phone, new CompletableFuture<>());
+        queue.add(registration);
+        try {
+            return registration.future().get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("注册被中断：" + phone, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("注册失败：" + phone, e);
+        }
+    }
+    
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Registration first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Registration> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWaitMillis);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Registration next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                persist(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 批量写入并回查，失败时本批的登录请求全部返回失败
+     *
+     * @param batch 注册请求
+     */
+    private void persist(List<Registration> batch) {
+        try {
+            // 同一批内的重复手机号只插入一次
+            Map<String, User> users = new LinkedHashMap<>();
+            for (Registration registration : batch) {
+                users.computeIfAbsent(registration.phone(), phone -> new User()
+                        .setPhone(phone)
+                        .setNickName(USER_NICK_NAME_PREFIX + RandomUtil.randomString(6)));
+            }
+            int created = userMapper.insertIgnoreBatch(new ArrayList<>(users.values()));
+            Map<String, User> saved = userMapper.selectList(new QueryWrapper<User>().in("phone", users.keySet()))
+                                                .stream()
+                                                .collect(Collectors.toMap(User::getPhone, Function.identity()));
+            for (Registration registration : batch) {
+                User user = saved.get(registration.phone());
+                if (user == null) {
+                    registration.future().completeExceptionally(new IllegalStateException("注册后未查到用户"));
+                } else {
+                    registration.future().complete(user);
+                }
+            }
+            log.debug("批量注册{}个手机号，实际创建{}个", users.size(), created);
+        } catch (Exception e) {
+            log.error("批量注册失败，共{}个", batch.size(), e);
+            batch.forEach(registration -> registration.future().completeExceptionally(e));
+        }
+    }
+    
+    private record Registration(String phone, CompletableFuture<User> future) {
+    }
+}
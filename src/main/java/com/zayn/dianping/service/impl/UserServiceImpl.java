@@ -1,9 +1,9 @@
 package com.zayn.dianping.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.zayn.dianping.domain.dto.LoginFormDTO;
@@ -12,19 +12,23 @@ import com.zayn.dianping.domain.dto.UserDTO;
 import com.zayn.dianping.entity.User;
 import com.zayn.dianping.mapper.UserMapper;
 import com.zayn.dianping.service.IUserService;
+import com.zayn.dianping.utils.CacheClient;
 import com.zayn.dianping.utils.RegexUtils;
+import com.zayn.dianping.utils.SessionCache;
+import com.zayn.dianping.utils.SignedTokens;
+import com.zayn.dianping.utils.UserHolder;
 import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 import static com.zayn.dianping.utils.RedisConstants.*;
-import static com.zayn.dianping.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 
 /**
  * <p>
@@ -35,8 +39,19 @@ import static com.zayn.dianping.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 @Service
 @RequiredArgsConstructor
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IUserService {
+    private static final DefaultRedisScript<Long> LOGIN_CODE_SCRIPT;
+    
+    static {
+        LOGIN_CODE_SCRIPT = new DefaultRedisScript<>();
+        LOGIN_CODE_SCRIPT.setLocation(new ClassPathResource("lua/login_code.lua"));
+        LOGIN_CODE_SCRIPT.setResultType(Long.class);
+    }
     
     private final StringRedisTemplate stringRedisTemplate;
+    private final SessionCache sessionCache;
+    private final SignedTokens signedTokens;
+    private final CacheClient cacheClient;
+    private final UserRegistrar userRegistrar;
     
     /**
      * 发送手机验证码
@@ -85,46 +100,79 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             return Result.fail("手机号格式不正确");
         }
         
-        // 2. 校验验证码
-        String code = loginForm.getCode();
-        
-        // 从redis中获取保存的验证码
-        String redisCode = stringRedisTemplate.opsForValue().get(LOGIN_CODE_KEY + phone);
-        
-        // 判断验证码是否正确
-        if (!code.equals(redisCode)) {
-            // 验证码不正确
-            log.error("验证码不正确：{}，正确验证码：{}", code, redisCode);
+        // 2. 校验并消费验证码，一次lua，验证码只能使用一次
+        String code = StrUtil.nullToEmpty(loginForm.getCode());
+        Long verified = stringRedisTemplate.execute(LOGIN_CODE_SCRIPT, Collections.singletonList(LOGIN_CODE_KEY + phone), code);
+        if (verified == null || verified == 1) {
+            return Result.fail("验证码已过期，请重新获取");
+        }
+        if (verified == 2) {
+            log.debug("验证码不正确：{}", phone);
             return Result.fail("验证码不正确");
         }
         
-        User user = query().eq("phone", phone).one();
+        // 3. 查询用户，手机号 -> 用户缓存，不存在的手机号缓存空值
+        UserDTO userDTO = cacheClient.queryWithPassThrough(LOGIN_PHONE_KEY, phone, UserDTO.class, this::findByPhone,
+                LOGIN_PHONE_TTL, TimeUnit.MINUTES);
+        if (userDTO == null) {
+            // 用户不存在，批量注册，覆盖空值缓存
+            log.debug("用户不存在，注册用户：{}", phone);
+            userDTO = BeanUtil.copyProperties(userRegistrar.register(phone), UserDTO.class);
+            cacheClient.set(LOGIN_PHONE_KEY + phone, userDTO, LOGIN_PHONE_TTL, TimeUnit.MINUTES);
+        }
         
-        if (user == null) {
-            // 用户不存在，注册用户
-            log.error("用户不存在，注册用户：{}", phone);
-            user = createUserByPhone(phone);
+        if (signedTokens.enabled()) {
+            // 无状态模式，用户信息签名后放在token中，不写redis
+            return Result.ok(JSONUtil.createObj().set("token", signedTokens.issue(userDTO)));
         }
         
-        // 保存用户信息到redis
+        // 4. 保存用户信息到redis，写入和设置过期时间一次pipeline
         String token = UUID.randomUUID().toString(true); // 生成token，todo 完善安全性
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class); // 将user对象转为UserDTO对象
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
-                CopyOptions.create()
-                           .setIgnoreNullValue(true)
-                           .setFieldValueEditor((field, value) -> value.toString())); // 将对象转为map
-        stringRedisTemplate.opsForHash().putAll(LOGIN_USER_KEY + token, userMap); // 保存用户信息
-        stringRedisTemplate.expire(LOGIN_USER_KEY + token, LOGIN_USER_TTL, TimeUnit.SECONDS); // 设置过期时间
+        sessionCache.save(token, userDTO);
         
         // 返回json 的 token
         return Result.ok(JSONUtil.createObj().set("token", token));
     }
     
-    private User createUserByPhone(String phone) {
-        User user = new User();
-        user.setPhone(phone)
-            .setNickName(USER_NICK_NAME_PREFIX + RandomUtil.randomString(6));
-        save(user);
-        return user;
+    /**
+     * 登出
+     * 删除redis中的会话和会话索引中的token，并广播让各节点删除本地缓存的会话；无状态模式记录到撤销列表
+     *
+     * @param token 登录token
+     * @return 登出结果
+     */
+    @Override
+    public Result logout(String token) {
+        if (StrUtil.isBlank(token)) {
+            return Result.ok();
+        }
+        if (signedTokens.enabled()) {
+            signedTokens.revoke(token);
+            return Result.ok();
+        }
+        sessionCache.remove(token, UserHolder.getUser().getId());
+        return Result.ok();
+    }
+    
+    /**
+     * 退出当前用户的全部登录（所有设备）
+     *
+     * @return 撤销的会话数，无状态模式不统计
+     */
+    @Override
+    public Result logoutAll() {
+        Long userId = UserHolder.getUser().getId();
+        if (signedTokens.enabled()) {
+            signedTokens.revokeAll(userId);
+            return Result.ok();
+        }
+        int revoked = sessionCache.removeAll(userId);
+        log.debug("用户{}退出全部登录，共{}个会话", userId, revoked);
+        return Result.ok(revoked);
+    }
+    
+    private UserDTO findByPhone(String phone) {
+        User user = query().eq("phone", phone).one();
+        return user == null ? null : BeanUtil.copyProperties(user, UserDTO.class);
     }
 }
@@ -0,0 +1,402 @@
+package com.zayn.dianping.service.impl;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.lang.UUID;
+import com.zayn.dianping.entity.VoucherOrder;
+import com.zayn.dianping.service.IVoucherOrderService;
+import com.zayn.dianping.utils.SeckillKeys;
+import com.zayn.dianping.utils.SeckillOrderStatus;
+import com.zayn.dianping.utils.WorkerThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static com.zayn.dianping.utils.RedisConstants.SECKILL_ORDER_DEAD_LETTER_STREAM;
+
+/**
+ * 秒杀订单消费者
+ * 每个订单消息队列一个读取线程，从 stream 消费组读取订单，按优惠券id分发到固定的工作线程
+ * 库存分片时每个桶一个消息队列，分别读取，redis集群下每条命令只涉及一个slot
+ * 工作线程攒够N条或等待T毫秒后批量落库，同一优惠券只在一个线程中扣减库存，不会互相竞争行锁
+ * 事务提交后才确认消息，未确认的消息超时后由任意节点认领重试，多次失败转入死信队列
+ * 本节点已分发、还在工作线程队列中等待的消息不认领，避免落库慢时重复分发、误转死信
+ * 处理结果写入订单状态，供客户端查询
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午9:40
+ */
+@Slf4j
+@Component
+public class VoucherOrderConsumer {
+    private static final String ORDER_GROUP = "g1";
+    private static final Duration READ_BLOCK = Duration.ofSeconds(2);
+    private static final int PENDING_SCAN_COUNT = 100;
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final IVoucherOrderService voucherOrderService;
+    private final SeckillKeys seckillKeys;
+    private final SeckillOrderStatus seckillOrderStatus;
+    private final WorkerThreads workerThreads;
+    // 每个节点一个消费者，重启后原消费者的pending消息由超时认领处理
+    private final String consumerName = "consumer-" + UUID.fastUUID().toString(true);
+    private volatile boolean running = true;
+    // 已分发到工作线程、尚未处理完的消息，stream:id
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    
+    // 工作线程数，同一优惠券固定由一个线程处理
+    @Value("${dianping.seckill.order.workers:4}")
+    private int workerCount;
+    
+    // 每批最多落库的订单数
+    @Value("${dianping.seckill.order.batch-size:200}")
+    private int batchSize;
+    
+    // 攒批最长等待时间
+    @Value("${dianping.seckill.order.batch-wait-millis:50}")
+    private long batchWaitMillis;
+    
+    // 消息未确认超过该时间，视为消费者宕机或处理失败，由其他消费者认领重试
+    @Value("${dianping.seckill.order.pending-idle-seconds:30}")
+    private long pendingIdleSeconds;
+    
+    // 最大投递次数，超过后转入死信队列
+    @Value("${dianping.seckill.order.max-deliveries:3}")
+    private int maxDeliveries;
+    
+    private ExecutorService executor;
+    private Worker[] workers;
+    
+    public VoucherOrderConsumer(StringRedisTemplate stringRedisTemplate, IVoucherOrderService voucherOrderService,
+                                SeckillKeys seckillKeys, SeckillOrderStatus seckillOrderStatus, WorkerThreads workerThreads) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.voucherOrderService = voucherOrderService;
+        this.seckillKeys = seckillKeys;
+        this.seckillOrderStatus = seckillOrderStatus;
+        this.workerThreads = workerThreads;
+    }
+    
+    @PostConstruct
+    private void init() {
+        List<String> streamKeys = seckillKeys.streamKeys();
+        for (String streamKey : streamKeys) {
+            try {
+                stringRedisTemplate.opsForStream().createGroup(streamKey, ReadOffset.from("0"), ORDER_GROUP);
+            } catch (Exception e) {
+                // 消费组已存在
+                log.debug("消费组已存在：{}", streamKey);
+            }
+        }
+        
+        executor = Executors.newFixedThreadPool(workerCount + streamKeys.size(),
+                workerThreads.threadFactory("seckill-order-"));
+        workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker();
+            executor.submit(workers[i]);
+        }
+        for (String streamKey : streamKeys) {
+            executor.submit(new Reader(streamKey));
+        }
+    }
+    
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        // 停止读取，工作线程处理完队列中的订单后退出，没处理完的由其他节点认领
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(READ_BLOCK.toSeconds() + 5, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * 按优惠券id分发到工作线程，队列满时阻塞读取线程，消息留在stream中
+     */
+    private void dispatch(MapRecord<String, Object, Object> record) throws InterruptedException {
+        Object voucherId = record.getValue().get("voucherId");
+        int index = voucherId == null ? 0 : Math.floorMod(voucherId.hashCode(), workers.length);
+        inFlight.add(inFlightKey(record.getStream(), record.getId()));
+        try {
+            workers[index].queue.put(record);
+        } catch (InterruptedException e) {
+            inFlight.remove(inFlightKey(record.getStream(), record.getId()));
+            throw e;
+        }
+    }
+    
+    private static String inFlightKey(String streamKey, RecordId id) {
+        return streamKey + ":" + id.getValue();
+    }
+    
+    /**
+     * 工作线程队列剩余空间不足一次pending扫描时跳过认领，积压时认领的消息只会继续排队，还会阻塞读取线程
+     */
+    private boolean workersBusy() {
+        for (Worker worker : workers) {
+            if (worker.queue.remainingCapacity() < PENDING_SCAN_COUNT) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 处理pending列表
+     * 认领超时未确认的消息（包括其他节点宕机遗留的）重新分发，投递次数过多的转入死信队列
+     * 本节点的消息还在工作线程队列中时跳过，空闲时间长只是排队久，不是处理失败
+     *
+     * @param streamKey 订单消息队列
+     */
+    private void handlePendingList(String streamKey) throws InterruptedException {
+        if (workersBusy()) {
+            return;
+        }
+        Duration minIdle = Duration.ofSeconds(pendingIdleSeconds);
+        PendingMessages pendingMessages = stringRedisTemplate.opsForStream()
+                                                             .pending(streamKey, ORDER_GROUP, Range.unbounded(), PENDING_SCAN_COUNT);
+        for (PendingMessage pending : pendingMessages) {
+            if (pending.getElapsedTimeSinceLastDelivery().compareTo(minIdle) < 0) {
+                continue;
+            }
+            if (consumerName.equals(pending.getConsumerName())
+                    && inFlight.contains(inFlightKey(streamKey, pending.getId()))) {
+                continue;
+            }
+            // 认领，多个节点同时认领只有一个成功
+            List<MapRecord<String, Object, Object>> claimed = stringRedisTemplate.opsForStream().claim(
+                    streamKey, ORDER_GROUP, consumerName,
+                    RedisStreamCommands.XClaimOptions.minIdle(minIdle).ids(pending.getId()));
+            if (claimed == null || claimed.isEmpty()) {
+                continue;
+            }
+            MapRecord<String, Object, Object> record = claimed.get(0);
+            if (pending.getTotalDeliveryCount() >= maxDeliveries) {
+                deadLetter(record, pending.getTotalDeliveryCount());
+                continue;
+            }
+            dispatch(record);
+        }
+    }
+    
+    /**
+     * 转入死信队列并确认原消息，需要人工处理
+     *
+     * @param record     订单消息
+     * @param deliveries 已投递次数
+     */
+    private void deadLetter(MapRecord<String, Object, Object> record, long deliveries) {
+        Map<String, String> fields = new HashMap<>();
+        record.getValue().forEach((k, v) -> fields.put(k.toString(), v.toString()));
+        fields.put("sourceId", record.getId().getValue());
+        fields.put("deliveries", String.valueOf(deliveries));
+        stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DEAD_LETTER_STREAM, fields);
+        stringRedisTemplate.opsForStream().acknowledge(ORDER_GROUP, record);
+        seckillOrderStatus.markFailed(toOrder(record));
+        log.error("订单消息投递{}次仍失败，转入死信队列：{}", deliveries, record.getValue());
+    }
+    
+    /**
+     * 批量落库
+     * 按优惠券分组，每组一个事务；批量失败（例如数据库库存不足）时逐条处理，逐条失败的不确认，稍后重试
+     *
+     * @param records 订单消息
+     */
+    private void persist(List<MapRecord<String, Object, Object>> records) {
+        Map<Long, List<MapRecord<String, Object, Object>>> byVoucher = new LinkedHashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            VoucherOrder order = toOrder(record);
+            byVoucher.computeIfAbsent(order.getVoucherId(), k -> new ArrayList<>()).add(record);
+        }
+        
+        byVoucher.forEach((voucherId, group) -> {
+            List<VoucherOrder> orders = group.stream().map(this::toOrder).toList();
+            try {
+                int created = voucherOrderService.createVoucherOrders(voucherId, orders);
+                acknowledge(group);
+                markResults(orders, created);
+                log.debug("优惠券{}批量下单{}条，实际创建{}条", voucherId, orders.size(), created);
+            } catch (Exception e) {
+                log.warn("优惠券{}批量下单失败，逐条处理", voucherId, e);
+                group.forEach(this::persistOne);
+            }
+        });
+    }
+    
+    /**
+     * 写入批量落库的结果
+     * 被INSERT IGNORE忽略的可能是重复投递（订单已存在），也可能是该用户已有其他订单（订单id不同），回查订单id区分
+     *
+     * @param orders  本批订单
+     * @param created 实际插入的行数
+     */
+    private void markResults(List<VoucherOrder> orders, int created) {
+        if (created == orders.size()) {
+            seckillOrderStatus.markPersisted(orders);
+            return;
+        }
+        List<Long> ids = orders.stream().map(VoucherOrder::getId).toList();
+        Set<Long> saved = voucherOrderService.query().select("id").in("id", ids).list()
+                                             .stream()
+                                             .map(VoucherOrder::getId)
+                                             .collect(Collectors.toSet());
+        Map<Boolean, List<VoucherOrder>> results = orders.stream()
+                                                         .collect(Collectors.partitioningBy(order -> saved.contains(order.getId())));
+        seckillOrderStatus.markPersisted(results.get(true));
+        if (!results.get(false).isEmpty()) {
+            seckillOrderStatus.markFailed(results.get(false));
+            log.warn("{}个订单的用户已有该优惠券的其他订单，标记为失败", results.get(false).size());
+        }
+    }
+    
+    private void persistOne(MapRecord<String, Object, Object> record) {
+        VoucherOrder order = toOrder(record);
+        try {
+            boolean created = voucherOrderService.createVoucherOrder(order);
+            acknowledge(List.of(record));
+            if (created) {
+                seckillOrderStatus.markPersisted(List.of(order));
+            } else {
+                seckillOrderStatus.markFailed(order);
+            }
+        } catch (DuplicateKeyException e) {
+            // 订单已存在是重复投递，否则是该用户已有其他订单
+            acknowledge(List.of(record));
+            if (voucherOrderService.getById(order.getId()) != null) {
+                seckillOrderStatus.markPersisted(List.of(order));
+            } else {
+                seckillOrderStatus.markFailed(order);
+            }
+        } catch (Exception e) {
+            // 不确认，超时后重试
+            log.error("订单处理异常：{}", record.getId(), e);
+        }
+    }
+    
+    /**
+     * 确认消息，同一优惠券的消息可能来自多个分片的消息队列
+     */
+    private void acknowledge(List<MapRecord<String, Object, Object>> records) {
+        Map<String, List<MapRecord<String, Object, Object>>> byStream = records.stream()
+                                                                               .collect(Collectors.groupingBy(MapRecord::getStream));
+        byStream.forEach((streamKey, group) -> {
+            RecordId[] ids = group.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+            stringRedisTemplate.opsForStream().acknowledge(streamKey, ORDER_GROUP, ids);
+        });
+    }
+    
+    private VoucherOrder toOrder(MapRecord<String, Object, Object> record) {
+        return BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true);
+    }
+    
+    /**
+     * 读取线程，读取新消息并定期处理pending列表
+     */
+    private class Reader implements Runnable {
+        private final String streamKey;
+        
+        Reader(String streamKey) {
+            this.streamKey = streamKey;
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked") // StreamOffset可变参数
+        public void run() {
+            long lastPendingCheck = 0;
+            while (running) {
+                try {
+                    // 定期处理pending列表，持续有新消息时也不会饿死
+                    long now = System.currentTimeMillis();
+                    if (now - lastPendingCheck >= READ_BLOCK.toMillis()) {
+                        lastPendingCheck = now;
+                        handlePendingList(streamKey);
+                    }
+                    
+                    // XREADGROUP GROUP g1 c COUNT n BLOCK 2000 STREAMS stream:orders >
+                    List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(ORDER_GROUP, consumerName),
+                            StreamReadOptions.empty().count(batchSize).block(READ_BLOCK),
+                            StreamOffset.create(streamKey, ReadOffset.lastConsumed())
+                    );
+                    if (records == null) {
+                        continue;
+                    }
+                    for (MapRecord<String, Object, Object> record : records) {
+                        dispatch(record);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    if (!running) {
+                        return;
+                    }
+                    log.error("订单消息读取异常", e);
+                    try {
+                        Thread.sleep(READ_BLOCK.toMillis());
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * 工作线程，攒够 batchSize 条或等待 batchWaitMillis 后批量落库
+     */
+    private class Worker implements Runnable {
+        private final BlockingQueue<MapRecord<String, Object, Object>> queue = new ArrayBlockingQueue<>(1024);
+        
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty()) {
+                try {
+                    MapRecord<String, Object, Object> first = queue.poll(READ_BLOCK.toMillis(), TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    List<MapRecord<String, Object, Object>> batch = new ArrayList<>(batchSize);
+                    batch.add(first);
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWaitMillis);
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= batchSize || remaining <= 0) {
+                            break;
+                        }
+                        MapRecord<String, Object, Object> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    try {
+                        persist(batch);
+                    } finally {
+                        // 处理完成，未确认的消息可以被认领重试
+                        batch.forEach(record -> inFlight.remove(inFlightKey(record.getStream(), record.getId())));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    // 未确认的消息超时后重试
+                    log.error("订单批量落库异常", e);
+                }
+            }
+        }
+    }
+}
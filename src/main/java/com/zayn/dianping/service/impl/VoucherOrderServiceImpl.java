@@ -6,29 +6,28 @@ import com.zayn.dianping.entity.VoucherOrder;
 import com.zayn.dianping.mapper.VoucherOrderMapper;
 import com.zayn.dianping.service.ISeckillVoucherService;
 import com.zayn.dianping.service.IVoucherOrderService;
+import com.zayn.dianping.utils.BloomFilters;
 import com.zayn.dianping.utils.RedisIDGenerator;
+import com.zayn.dianping.utils.SeckillGate;
+import com.zayn.dianping.utils.SeckillKeys;
+import com.zayn.dianping.utils.SeckillOrderStatus;
 import com.zayn.dianping.utils.UserHolder;
-import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.Collections;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
 
 /**
  * <p>
  * 优惠券订单服务实现类
+ * 下单信息由 seckill.lua 写入 redis stream，{@link VoucherOrderConsumer} 异步批量落库
  * </p>
  */
 @Slf4j
@@ -36,20 +35,25 @@ import java.util.concurrent.Executors;
 @RequiredArgsConstructor
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final DefaultRedisScript<Long> BORROW_SCRIPT;
     
     static {
         SECKILL_SCRIPT = new DefaultRedisScript<>();
         SECKILL_SCRIPT.setLocation(new ClassPathResource("lua/seckill.lua"));
         SECKILL_SCRIPT.setResultType(Long.class);
+        
+        BORROW_SCRIPT = new DefaultRedisScript<>();
+        BORROW_SCRIPT.setLocation(new ClassPathResource("lua/seckill_borrow.lua"));
+        BORROW_SCRIPT.setResultType(Long.class);
     }
     
     private final ISeckillVoucherService seckillVoucherService;
     private final RedisIDGenerator redisIDGenerator;
     private final StringRedisTemplate stringRedisTemplate;
-    private final RedissonClient redissonClient;
-    private final BlockingQueue<VoucherOrder> orderTaskQueue = new ArrayBlockingQueue<>(1024 * 1024);
-    private IVoucherOrderService proxy;
+    private final BloomFilters bloomFilters;
+    private final SeckillKeys seckillKeys;
+    private final SeckillGate seckillGate;
+    private final SeckillOrderStatus seckillOrderStatus;
     
     /**
      * 抢购秒杀优惠券
@@ -59,53 +63,138 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      */
     @Override
     public Result seckillVoucher(Long voucherId) {
-        Long userId = UserHolder.getUser().getId();
-        // lua
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(), // 空key，不要传null
-                String.valueOf(voucherId),
-                String.valueOf(userId)
-        );
+        // 优惠券一定不存在，不访问redis
+        if (!bloomFilters.voucher().mightContain(voucherId)) {
+            return Result.fail("优惠券不存在");
+        }
         
-        // 判断结果是否为0
-        int status = -1;
-        if (result != null) {
-            status = result.intValue();
+        // 本地已知售罄，不访问redis
+        if (seckillGate.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
         }
         
-        // 不为0，没有购买资格
-        if (status != 0) {
-            return Result.fail(status == 1 ? "库存不足" : "您已抢购过该优惠券");
+        // 请求量远超剩余库存，多余的请求直接拒绝
+        if (!seckillGate.tryAcquire(voucherId)) {
+            return Result.fail("抢购人数过多，请稍后再试");
         }
         
-        // 为0，有购买资格，将下单信息加入到队列中
+        Long userId = UserHolder.getUser().getId();
+        // 订单id，lua中和下单信息一起写入消息队列
         long orderId = redisIDGenerator.nextId("order");
+        // 用户固定在一个桶，不分片时只有一个桶
+        int bucket = seckillKeys.bucketOf(userId);
+        int status = executeSeckill(voucherId, userId, orderId, bucket);
         
-        // 生成订单
-        VoucherOrder voucherOrder = new VoucherOrder();
-        voucherOrder.setId(orderId); // 订单号
-        voucherOrder.setVoucherId(voucherId); // 优惠券id
-        voucherOrder.setUserId(userId); // 用户id
+        // 当前桶库存不足，依次向兄弟桶借库存后重试
+        for (int i = 1; status == 1 && i < seckillKeys.shards(); i++) {
+            int sibling = (bucket + i) % seckillKeys.shards();
+            if (borrowStock(voucherId, sibling, bucket) > 0) {
+                status = executeSeckill(voucherId, userId, orderId, bucket);
+            }
+        }
         
-        // 将订单信息加入到队列中
-        orderTaskQueue.add(voucherOrder);
+        // 本次没有抢到，重新读取所有桶确认售罄后才标记并通知其他节点
+        // 其他请求借库存的过程中，库存可能暂时不在任何桶的stock里，不能只凭本次借不到就标记
+        if (status == 1) {
+            seckillGate.confirmSoldOut(voucherId);
+        }
         
-        // 代理调用
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
+        // 不为0，没有购买资格
+        if (status != 0) {
+            return Result.fail(switch (status) {
+                case 1 -> "库存不足";
+                case 2 -> "您已抢购过该优惠券";
+                case 3 -> "秒杀尚未开始";
+                case 4 -> "秒杀已经结束";
+                case 5 -> "优惠券已下架";
+                case 6 -> "优惠券不存在";
+                default -> "抢购失败，请稍后再试";
+            });
+        }
         
-        // 返回订单id
+        // 为0，有购买资格，下单信息已由lua写入消息队列，返回订单id
         return Result.ok(orderId);
     }
     
+    /**
+     * 执行秒杀脚本，扣减用户所在桶的库存
+     *
+     * @return 0 成功，1 库存不足，2 重复抢购，3 尚未开始，4 已经结束，5 已下架，6 不存在
+     */
+    private int executeSeckill(Long voucherId, Long userId, long orderId, int bucket) {
+        // lua
+        Long result = stringRedisTemplate.execute(
+                SECKILL_SCRIPT,
+                List.of(seckillKeys.voucherKey(voucherId, bucket),
+                        seckillKeys.orderKey(voucherId, bucket),
+                        seckillKeys.streamKey(bucket),
+                        seckillKeys.statusKey(orderId, bucket)),
+                String.valueOf(voucherId),
+                String.valueOf(userId),
+                String.valueOf(orderId),
+                String.valueOf(seckillOrderStatus.ttlSeconds())
+        );
+        return result == null ? -1 : result.intValue();
+    }
+    
+    /**
+     * 从兄弟桶借库存到用户所在桶
+     * 两个桶可能在不同slot，分两步执行：lua从兄弟桶扣减并记入其 transit 字段，加到自己的桶之后再扣回 transit
+     * 任何时刻借出的库存都能在 stock 或 transit 中读到，售罄确认不会漏算；中间宕机只会少卖，不会超卖
+     *
+     * @return 借到的数量
+     */
+    private long borrowStock(Long voucherId, int from, int to) {
+        Long taken = stringRedisTemplate.execute(
+                BORROW_SCRIPT,
+                Collections.singletonList(seckillKeys.voucherKey(voucherId, from))
+        );
+        if (taken == null || taken <= 0) {
+            return 0;
+        }
+        stringRedisTemplate.opsForHash().increment(seckillKeys.voucherKey(voucherId, to), "stock", taken);
+        stringRedisTemplate.opsForHash().increment(seckillKeys.voucherKey(voucherId, from), "transit", -taken);
+        return taken;
+    }
+    
+    /**
+     * 查询秒杀订单状态
+     * 排队中且 waitMillis 大于0时长轮询，状态确定或超时后返回，客户端不需要重复调用秒杀接口确认结果
+     *
+     * @param orderId    订单id
+     * @param waitMillis 最长等待时间
+     * @return 订单状态
+     */
+    @Override
+    public DeferredResult<Result> queryOrderStatus(Long orderId, long waitMillis) {
+        Long userId = UserHolder.getUser().getId();
+        SeckillOrderStatus.Status status = seckillOrderStatus.get(orderId, userId);
+        if (status == null) {
+            // 状态已过期，以数据库为准
+            boolean exists = query().eq("id", orderId).eq("user_id", userId).exists();
+            return completed(exists ? SeckillOrderStatus.ok(orderId, SeckillOrderStatus.Status.PERSISTED) : Result.fail("订单不存在"));
+        }
+        if (status != SeckillOrderStatus.Status.QUEUED || waitMillis <= 0) {
+            return completed(SeckillOrderStatus.ok(orderId, status));
+        }
+        return seckillOrderStatus.await(orderId, userId, waitMillis);
+    }
+    
+    private static DeferredResult<Result> completed(Result result) {
+        DeferredResult<Result> deferred = new DeferredResult<>();
+        deferred.setResult(result);
+        return deferred;
+    }
+    
     /**
      * 创建优惠券订单
      * 一人只能抢购一张
      *
      * @param voucherOrder 订单信息
+     * @return 是否创建成功，重复下单或库存不足时返回false
      */
     @Transactional
-    public void createVoucherOrder(VoucherOrder voucherOrder) {
+    public boolean createVoucherOrder(VoucherOrder voucherOrder) {
         //  一人只能抢购一张
         Long userId = voucherOrder.getUserId(); //子线程，不能通过ThreadLocal获取
         
@@ -114,7 +203,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                                            .count());
         if (count > 0) {
             log.info("用户{}已抢购过该优惠券", userId);
-            return;
+            return false;
         }
         
         // 扣减库存
@@ -127,51 +216,40 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         // 扣减失败
         if (!success) {
             log.info("优惠券{}库存不足", voucherOrder.getVoucherId());
-            return;
+            return false;
         }
         
         // 保存订单
-        save(voucherOrder);
-    }
-    
-    @PostConstruct
-    private void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        return save(voucherOrder);
     }
     
     /**
-     * 处理优惠券订单
+     * 批量创建同一优惠券的订单，一个事务
+     * 一条多值INSERT，重复订单由唯一索引忽略；按实际插入行数一次扣减库存
      *
-     * @param order 订单信息
+     * @param voucherId 优惠券id
+     * @param orders    订单，均属于该优惠券
+     * @return 实际创建的订单数
      */
-    private void handleVoucherOrder(VoucherOrder order) {
-        Long userId = order.getUserId();
-        // 锁
-        RLock lock = redissonClient.getLock("lock:order:" + userId);
-        boolean isLock = lock.tryLock();
-        if (isLock) {
-            try {
-                proxy.createVoucherOrder(order);
-            } finally {
-                lock.unlock();
-            }
+    @Override
+    @Transactional
+    public int createVoucherOrders(Long voucherId, List<VoucherOrder> orders) {
+        int inserted = getBaseMapper().insertIgnoreBatch(orders);
+        if (inserted == 0) {
+            // 全部是重复投递或重复下单
+            return 0;
         }
-        log.info("不能重复抢购");
-    }
-    
-    private class VoucherOrderHandler implements Runnable {
-        @Override
-        public void run() {
-            while (true) {
-                try {
-                    // 从队列中获取订单信息
-                    VoucherOrder order = orderTaskQueue.take();
-                    // 创建订单
-                    handleVoucherOrder(order);
-                } catch (InterruptedException e) {
-                    log.error("订单处理异常", e);
-                }
-            }
+        
+        // 扣减库存 stock = stock - k
+        boolean success = seckillVoucherService.update()
+                                               .setSql("stock = stock - " + inserted)
+                                               .eq("voucher_id", voucherId)
+                                               .ge("stock", inserted)
+                                               .update();
+        if (!success) {
+            // 回滚，由调用方逐条处理
+            throw new IllegalStateException("优惠券" + voucherId + "库存不足，批量下单" + inserted + "条");
         }
+        return inserted;
     }
 }
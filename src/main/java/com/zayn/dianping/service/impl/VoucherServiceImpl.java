@@ -7,12 +7,27 @@ import com.zayn.dianping.entity.Voucher;
 import com.zayn.dianping.mapper.VoucherMapper;
 import com.zayn.dianping.service.ISeckillVoucherService;
 import com.zayn.dianping.service.IVoucherService;
+import com.zayn.dianping.utils.BloomFilters;
+import com.zayn.dianping.utils.SeckillKeys;
 import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.zayn.dianping.utils.RedisConstants.SECKILL_STOCK_KEY;
 
@@ -21,13 +36,28 @@ import static com.zayn.dianping.utils.RedisConstants.SECKILL_STOCK_KEY;
  * 优惠券服务实现类
  * </p>
  */
+@Slf4j
 @Service
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
+    private static final DefaultRedisScript<Long> INIT_SCRIPT;
+    
+    static {
+        INIT_SCRIPT = new DefaultRedisScript<>();
+        INIT_SCRIPT.setLocation(new ClassPathResource("lua/seckill_init.lua"));
+        INIT_SCRIPT.setResultType(Long.class);
+    }
     
     @Resource
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private BloomFilters bloomFilters;
+    @Resource
+    private SeckillKeys seckillKeys;
+    
+    // 优惠券状态：1 上架
+    private static final int STATUS_ON_SALE = 1;
     
     @Override
     public Result queryVoucherOfShop(Long shopId) {
@@ -39,7 +69,6 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     
     /**
      * 新增秒杀券
-     * todo 保存到redis中
      *
      * @param voucher 优惠券信息，包含秒杀信息
      */
@@ -56,7 +85,93 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
         
-        // 保存到redis中
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), String.valueOf(voucher.getStock()));
+        // 保存到redis中，分片模式下库存拆分到各个桶
+        saveSeckillInfo(voucher.getId(), voucher.getStock(), voucher.getBeginTime(), voucher.getEndTime(), voucher.getStatus());
+        
+        // 提交后再加入布隆过滤器，否则提交前开始的重建扫描不到这条数据，新增的bit会被重建结果覆盖
+        Long voucherId = voucher.getId();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                bloomFilters.voucher().add(voucherId);
+            }
+        });
+    }
+    
+    /**
+     * 预热未结束的秒杀券，redis中已有任意一个桶的跳过
+     * 兼容旧版本的库存key：存在时以redis中的剩余库存为准，否则使用数据库库存
+     * 订单异步落库，数据库库存落后于redis，每个桶用lua写入，已存在时不覆盖，多个节点同时预热也不会超卖
+     */
+    @Override
+    public void preloadSeckillVouchers() {
+        List<SeckillVoucher> seckillVouchers = seckillVoucherService.query()
+                .gt("end_time", LocalDateTime.now())
+                .list();
+        if (seckillVouchers.isEmpty()) {
+            return;
+        }
+        Map<Long, Voucher> vouchers = listByIds(seckillVouchers.stream().map(SeckillVoucher::getVoucherId).toList())
+                .stream()
+                .collect(Collectors.toMap(Voucher::getId, Function.identity()));
+        
+        int loaded = 0;
+        for (SeckillVoucher seckillVoucher : seckillVouchers) {
+            Long voucherId = seckillVoucher.getVoucherId();
+            if (anyBucketExists(voucherId)) {
+                continue;
+            }
+            String legacyStock = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_KEY + voucherId);
+            int stock = legacyStock != null ? Integer.parseInt(legacyStock) : seckillVoucher.getStock();
+            Voucher voucher = vouchers.get(voucherId);
+            if (saveSeckillInfo(voucherId, stock, seckillVoucher.getBeginTime(), seckillVoucher.getEndTime(),
+                    voucher == null ? null : voucher.getStatus())) {
+                loaded++;
+            }
+        }
+        log.info("秒杀券预热完成，共{}张", loaded);
+    }
+    
+    /**
+     * redis中是否已有该优惠券的桶，一次pipeline检查所有桶
+     * 部分桶被淘汰时也跳过，不用数据库库存补齐，宁可少卖
+     */
+    private boolean anyBucketExists(Long voucherId) {
+        List<Object> exists = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < seckillKeys.shards(); i++) {
+                connection.keyCommands().exists(StringRedisSerializer.UTF_8.serialize(seckillKeys.voucherKey(voucherId, i)));
+            }
+            return null;
+        });
+        return exists.stream().anyMatch(Boolean.TRUE::equals);
+    }
+    
+    /**
+     * 秒杀券信息写入redis，每个桶一个hash：库存、开始时间、结束时间、状态
+     * 时间保存为毫秒时间戳，lua中直接和redis时间比较
+     * 每个桶由lua判断不存在时才写入，不覆盖redis中的剩余库存
+     *
+     * @return 是否写入了至少一个桶
+     */
+    private boolean saveSeckillInfo(Long voucherId, int stock, LocalDateTime beginTime, LocalDateTime endTime, Integer status) {
+        String begin = String.valueOf(beginTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        String end = String.valueOf(endTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        // 状态为空时按数据库默认值上架处理
+        String statusValue = String.valueOf(status == null ? STATUS_ON_SALE : status);
+        int[] buckets = seckillKeys.split(stock);
+        boolean created = false;
+        for (int i = 0; i < buckets.length; i++) {
+            Long result = stringRedisTemplate.execute(
+                    INIT_SCRIPT,
+                    Collections.singletonList(seckillKeys.voucherKey(voucherId, i)),
+                    String.valueOf(buckets[i]), begin, end, statusValue
+            );
+            if (Long.valueOf(1).equals(result)) {
+                created = true;
+            } else {
+                log.warn("优惠券{}的第{}个桶已存在，保留redis中的库存", voucherId, i);
+            }
+        }
+        return created;
     }
 }
@@ -0,0 +1,162 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.zayn.dianping.entity.Shop;
+import com.zayn.dianping.entity.Voucher;
+import com.zayn.dianping.mapper.ShopMapper;
+import com.zayn.dianping.mapper.VoucherMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.zayn.dianping.utils.RedisConstants.CACHE_SHOP_KEY;
+
+/**
+ * 商铺、优惠券id布隆过滤器
+ * 订阅新增广播同步本地镜像，定期从redis合并一次，补上丢失的广播
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午2:40
+ */
+@Slf4j
+@Component
+public class BloomFilters implements MessageListener {
+    public static final String SHOP = "shop";
+    public static final String VOUCHER = "voucher";
+    private static final int PAGE_SIZE = 10000;
+    
+    private final ShopMapper shopMapper;
+    private final VoucherMapper voucherMapper;
+    private final RedisBloomFilter shopFilter;
+    private final RedisBloomFilter voucherFilter;
+    
+    // 定期从redis合并的周期
+    @Value("${dianping.bloom.reload-interval-minutes:5}")
+    private long reloadIntervalMinutes;
+    
+    private ScheduledExecutorService reloadExecutor;
+    
+    public BloomFilters(StringRedisTemplate stringRedisTemplate,
+                        ShopMapper shopMapper,
+                        VoucherMapper voucherMapper,
+                        @Value("${dianping.bloom.shop.expected-insertions:1000000}") long shopExpectedInsertions,
+                        @Value("${dianping.bloom.shop.fpp:0.01}") double shopFpp,
+                        @Value("${dianping.bloom.voucher.expected-insertions:1000000}") long voucherExpectedInsertions,
+                        @Value("${dianping.bloom.voucher.fpp:0.01}") double voucherFpp) {
+        this.shopMapper = shopMapper;
+        this.voucherMapper = voucherMapper;
+        this.shopFilter = new RedisBloomFilter(stringRedisTemplate, SHOP, shopExpectedInsertions, shopFpp);
+        this.voucherFilter = new RedisBloomFilter(stringRedisTemplate, VOUCHER, voucherExpectedInsertions, voucherFpp);
+    }
+    
+    public RedisBloomFilter shop() {
+        return shopFilter;
+    }
+    
+    public RedisBloomFilter voucher() {
+        return voucherFilter;
+    }
+    
+    /**
+     * 按缓存key前缀判断id是否可能存在
+     * 没有对应过滤器的前缀一律放行
+     *
+     * @param keyPrefix 缓存key前缀
+     * @param id        id
+     * @return false 一定不存在
+     */
+    public boolean mightContain(String keyPrefix, Object id) {
+        if (CACHE_SHOP_KEY.equals(keyPrefix)) {
+            return shopFilter.mightContain(id);
+        }
+        return true;
+    }
+    
+    /**
+     * 启动时初始化，redis中已存在则直接加载，否则从数据库构建，然后开始定期合并
+     * 初始化失败时过滤器保持放行，定期合并成功后开始生效
+     */
+    public void init() {
+        reloadExecutor = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("bloom-reload-").setDaemon(true).build());
+        reloadExecutor.scheduleWithFixedDelay(this::reloadSafely, reloadIntervalMinutes, reloadIntervalMinutes,
+                TimeUnit.MINUTES);
+        if (!shopFilter.load()) {
+            rebuild(SHOP);
+        }
+        if (!voucherFilter.load()) {
+            rebuild(VOUCHER);
+        }
+    }
+    
+    @PreDestroy
+    private void destroy() {
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+        }
+    }
+    
+    private void reloadSafely() {
+        try {
+            shopFilter.load();
+            voucherFilter.load();
+        } catch (Exception e) {
+            log.warn("布隆过滤器合并失败", e);
+        }
+    }
+    
+    /**
+     * 收到新增广播（也包括自己发出的），格式为 过滤器名称:元素
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String value = StrUtil.subAfter(body, ':', false);
+        switch (StrUtil.subBefore(body, ':', false)) {
+            case SHOP -> shopFilter.addLocal(value);
+            case VOUCHER -> voucherFilter.addLocal(value);
+            default -> log.warn("无效的布隆过滤器广播：{}", body);
+        }
+    }
+    
+    /**
+     * 从数据库全量重建
+     *
+     * @param name shop 或 voucher
+     * @return 是否存在该过滤器
+     */
+    public boolean rebuild(String name) {
+        switch (name) {
+            case SHOP -> shopFilter.rebuild(lastId -> pageIds(shopMapper, new QueryWrapper<Shop>(), lastId));
+            case VOUCHER -> voucherFilter.rebuild(lastId -> pageIds(voucherMapper, new QueryWrapper<Voucher>(), lastId));
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 按id升序分页查询id
+     */
+    private <T> List<Long> pageIds(BaseMapper<T> mapper, QueryWrapper<T> wrapper, long lastId) {
+        wrapper.select("id").gt("id", lastId).orderByAsc("id").last("limit " + PAGE_SIZE);
+        return mapper.selectObjs(wrapper).stream()
+                     .map(id -> ((Number) id).longValue())
+                     .collect(Collectors.toList());
+    }
+}
@@ -1,53 +1,234 @@
 package com.zayn.dianping.utils;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import cn.hutool.core.lang.UUID;
 import com.zayn.dianping.entity.RedisData;
-import lombok.RequiredArgsConstructor;
+import com.zayn.dianping.utils.codec.CacheCodecs;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Component;
 
+import java.lang.reflect.Type;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import static com.zayn.dianping.utils.CacheMetrics.Event.*;
 import static com.zayn.dianping.utils.RedisConstants.CACHE_NULL_TTL;
-import static com.zayn.dianping.utils.RedisConstants.LOCK_SHOP_KEY;
 
 /**
+ * 缓存工具类
+ * 一级缓存（进程内）-> 二级缓存（redis）-> 数据库
+ * redis中的value由 {@link CacheCodecs} 编解码，空值为空字符串
+ *
  * @author zayn
  * * @date 2024/7/19/下午6:21
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class CacheClient {
-    private static final ExecutorService CACHE_REBUILD_POOL = Executors.newFixedThreadPool(10); // 缓存重建线程池
+    private static final long SINGLE_FLIGHT_TIMEOUT_MILLIS = 3000L; // 等待同key重建结果的超时时间
+    private static final long DEFAULT_REBUILD_COST_MILLIS = 50L; // 没有重建记录时假定的重建耗时
+    private static final byte[] NULL_VALUE = new byte[0]; // 缓存的空值
+    private static final long LOCK_TTL_SECONDS = 10L; // 重建锁的过期时间
+    private static final DefaultRedisScript<Long> UNLOCK_LUA;
+    
+    static {
+        UNLOCK_LUA = new DefaultRedisScript<>();
+        UNLOCK_LUA.setLocation(new ClassPathResource("lua/unlock.lua"));
+        UNLOCK_LUA.setResultType(Long.class);
+    }
+    
+    private final String lockOwnerPrefix = UUID.randomUUID().toString(true) + ":"; // 锁的持有者标识前缀，区分节点
     private final StringRedisTemplate stringRedisTemplate;
+    private final NearCache nearCache; // 一级缓存
+    private final BloomFilters bloomFilters; // 布隆过滤器，拦截不存在的id
+    private final CacheCodecs codecs; // 编解码
+    private final CacheMetrics metrics; // 指标
+    private final SingleFlight singleFlight = new SingleFlight(); // 本节点同key未命中只重建一次
+    private final Set<String> rebuildingKeys = ConcurrentHashMap.newKeySet(); // 本节点正在重建的key
+    private final LongAdder rebuildRejected = new LongAdder(); // 重建任务被拒绝次数
+    private final Map<String, Long> rebuildCostMillis = new ConcurrentHashMap<>(); // 各前缀最近一次查库耗时
+    private final ThreadPoolExecutor rebuildPool; // 缓存重建线程池
+    
+    // 过期时间随机增加 [0, ratio) 比例，避免同时过期造成缓存雪崩
+    @Value("${dianping.cache.ttl-jitter-ratio:0.1}")
+    private double ttlJitterRatio;
+    
+    // 临近过期时按概率提前后台刷新（XFetch）
+    @Value("${dianping.cache.early-refresh.enabled:false}")
+    private boolean earlyRefreshEnabled;
+    
+    // 提前刷新系数，越大越早刷新
+    @Value("${dianping.cache.early-refresh.beta:1.0}")
+    private double earlyRefreshBeta;
     
+    public CacheClient(StringRedisTemplate stringRedisTemplate, NearCache nearCache, BloomFilters bloomFilters,
+                       CacheCodecs codecs, CacheMetrics metrics, WorkerThreads workerThreads) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.nearCache = nearCache;
+        this.bloomFilters = bloomFilters;
+        this.codecs = codecs;
+        this.metrics = metrics;
+        // 有界队列，满了直接拒绝，下次访问过期数据时再触发；线程数同时限制了重建对数据库的并发
+        this.rebuildPool = new ThreadPoolExecutor(
+                2, 10,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1024),
+                workerThreads.threadFactory("cache-rebuild-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+    
+    @PreDestroy
+    private void destroy() {
+        rebuildPool.shutdown();
+    }
     
+    /**
+     * 写入缓存，过期时间加随机抖动
+     *
+     * @param key   缓存key
+     * @param value 数据
+     * @param time  过期时间
+     * @param unit  时间单位
+     */
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        this.setRaw(key, codecs.encode(value), time, unit);
     }
     
-    public String get(String key) {
-        return stringRedisTemplate.opsForValue().get(key);
+    /**
+     * 读取缓存
+     *
+     * @param key  缓存key
+     * @param type 数据类型
+     * @return 数据，未命中、空值或无法解码时返回null
+     */
+    public <R> R get(String key, Type type) {
+        String prefix = CacheMetrics.prefixOf(key);
+        byte[] raw = this.getRaw(key);
+        if (raw != null && raw.length == 0) {
+            metrics.record(prefix, NULL_HIT);
+            return null;
+        }
+        R r = raw == null ? null : this.decode(key, raw, type);
+        metrics.record(prefix, r == null ? MISS : HIT);
+        return r;
     }
     
+    /**
+     * 删除缓存
+     * 同时失效一级缓存，并广播到其他节点
+     *
+     * @param key 缓存key
+     */
     public void del(String key) {
         stringRedisTemplate.delete(key);
+        nearCache.invalidate(key);
     }
     
+    /**
+     * 写入逻辑过期数据
+     * redis中不设置过期时间，过期时间保存在value中
+     *
+     * @param key   缓存key
+     * @param value 数据
+     * @param time  逻辑过期时间
+     * @param unit  时间单位
+     */
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        this.setRaw(key, this.encodeLogical(value, time, unit), null, null);
+    }
+    
+    /**
+     * 缓存预热，批量写入逻辑过期数据
+     *
+     * @param keyPrefix 缓存key前缀
+     * @param values    id -> 数据
+     * @param time      逻辑过期时间
+     * @param unit      时间单位
+     */
+    public <R, ID> void warmUp(String keyPrefix, Map<ID, R> values, Long time, TimeUnit unit) {
+        Map<String, byte[]> batch = new HashMap<>();
+        values.forEach((id, value) -> batch.put(keyPrefix + id, this.encodeLogical(value, time, unit)));
+        this.setBatch(batch, null, null);
+        log.info("缓存预热完成：{}，共{}条", keyPrefix, batch.size());
+    }
+    
+    /**
+     * 重建任务被拒绝的次数
+     *
+     * @return 拒绝次数
+     */
+    public long getRebuildRejectedCount() {
+        return rebuildRejected.sum();
+    }
+    
+    private byte[] encodeLogical(Object value, Long time, TimeUnit unit) {
+        return codecs.encodeLogical(value, LocalDateTime.now().plus(Duration.ofMillis(jitterMillis(time, unit))));
+    }
+    
+    /**
+     * 过期时间加随机抖动
+     *
+     * @param time 过期时间
+     * @param unit 时间单位
+     * @return 抖动后的毫秒数
+     */
+    private long jitterMillis(Long time, TimeUnit unit) {
+        long millis = unit.toMillis(time);
+        if (ttlJitterRatio <= 0) {
+            return millis;
+        }
+        return millis + (long) (millis * ttlJitterRatio * ThreadLocalRandom.current().nextDouble());
+    }
+    
+    /**
+     * XFetch 提前刷新判断
+     * 剩余时间越短、重建越慢，越可能触发：delta * beta * -ln(rand) >= 剩余时间
+     *
+     * @param keyPrefix       缓存key前缀
+     * @param remainingMillis 剩余过期时间
+     * @return 是否需要提前刷新
+     */
+    private boolean shouldRefreshEarly(String keyPrefix, long remainingMillis) {
+        if (!earlyRefreshEnabled || remainingMillis <= 0) {
+            return false;
+        }
+        long delta = rebuildCostMillis.getOrDefault(keyPrefix, DEFAULT_REBUILD_COST_MILLIS);
+        double rand = 1.0 - ThreadLocalRandom.current().nextDouble(); // (0, 1]
+        return delta * earlyRefreshBeta * -Math.log(rand) >= remainingMillis;
+    }
+    
+    /**
+     * 查库并记录耗时，作为提前刷新的重建耗时
+     *
+     * @param keyPrefix 缓存key前缀
+     * @param loader    数据库查询
+     * @return 查询结果
+     */
+    private <R> R loadFromDb(String keyPrefix, Supplier<R> loader) {
+        long start = System.nanoTime();
+        R r = loader.get();
+        long cost = System.nanoTime() - start;
+        rebuildCostMillis.put(keyPrefix, Math.max(1L, TimeUnit.NANOSECONDS.toMillis(cost)));
+        metrics.recordRebuild(keyPrefix, cost);
+        return r;
     }
     
     /**
@@ -66,32 +247,154 @@ public class CacheClient {
     public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFunction, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
         
-        String s = this.get(key);
+        // 布隆过滤器判断不存在，直接返回
+        if (!bloomFilters.mightContain(keyPrefix, id)) {
+            metrics.record(keyPrefix, BLOOM_REJECT);
+            return null;
+        }
         
-        if (StrUtil.isNotBlank(s)) {
-            // 缓存命中，直接返回
-            return JSONUtil.toBean(s, type);
+        // 一级缓存命中，直接返回
+        R local = nearCache.get(key, type);
+        if (local != null) {
+            metrics.record(keyPrefix, LOCAL_HIT);
+            return local;
         }
         
-        if (s != null) {
-            // 缓存命中，但是是空字符串
+        long version = nearCache.version(key);
+        byte[] raw = this.getRaw(key);
+        
+        if (raw != null && raw.length == 0) {
+            // 缓存命中，但是是空值
+            metrics.record(keyPrefix, NULL_HIT);
             return null;
         }
         
-        R r = dbFunction.apply(id);
-        if (r == null) {
-            // 不存在，将空值写入redis
-            this.set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            // 返回失败
-            return null;
+        R cached = raw == null ? null : this.decode(key, raw, type);
+        if (cached != null) {
+            // 缓存命中，回填一级缓存
+            metrics.record(keyPrefix, HIT);
+            nearCache.put(key, cached, version);
+            return cached;
         }
-        this.set(key, r, time, unit);
-        return r;
+        
+        // 未命中，本节点同key只查一次库
+        metrics.record(keyPrefix, MISS);
+        return singleFlight.execute(key, () -> {
+            R r = loadFromDb(keyPrefix, () -> dbFunction.apply(id));
+            if (r == null) {
+                // 不存在，将空值写入redis
+                this.setRaw(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
+                // 返回失败
+                return null;
+            }
+            this.set(key, r, time, unit);
+            nearCache.put(key, r, version);
+            return r;
+        }, SINGLE_FLIGHT_TIMEOUT_MILLIS);
+    }
+    
+    /**
+     * 批量查询，列表页一次往返取回N条数据
+     * 一级缓存 -> MGET -> 只对未命中的id批量查库 -> pipeline批量回写，不存在的id写入空值
+     *
+     * @param keyPrefix       缓存key前缀
+     * @param ids             id集合
+     * @param type            返回类型
+     * @param dbBatchFunction 数据库批量查询函数，返回 id -> 数据
+     * @param time            过期时间
+     * @param unit            时间单位
+     * @param <R>             返回类型
+     * @param <ID>            id类型
+     * @return id -> 数据，按传入顺序，不存在的id不包含在结果中
+     */
+    public <R, ID> Map<ID, R> queryBatch(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                         Function<Collection<ID>, Map<ID, R>> dbBatchFunction, Long time, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return result;
+        }
+        
+        // 去重，保持顺序，过滤掉布隆过滤器判断不存在的id
+        List<ID> idList = new ArrayList<>();
+        for (ID id : new LinkedHashSet<>(ids)) {
+            if (bloomFilters.mightContain(keyPrefix, id)) {
+                idList.add(id);
+            } else {
+                metrics.record(keyPrefix, BLOOM_REJECT);
+            }
+        }
+        
+        // 一级缓存
+        List<ID> remoteIds = new ArrayList<>();
+        for (ID id : idList) {
+            R local = nearCache.get(keyPrefix + id, type);
+            if (local != null) {
+                metrics.record(keyPrefix, LOCAL_HIT);
+                result.put(id, local);
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        
+        // MGET 一次取回
+        List<ID> missIds = new ArrayList<>();
+        if (!remoteIds.isEmpty()) {
+            List<String> keys = remoteIds.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+            long[] versions = keys.stream().mapToLong(nearCache::version).toArray();
+            List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                    connection.stringCommands().mGet(keys.stream().map(this::rawKey).toArray(byte[][]::new)));
+            for (int i = 0; i < remoteIds.size(); i++) {
+                byte[] raw = values == null ? null : values.get(i);
+                if (raw != null && raw.length == 0) {
+                    // 缓存的空值，跳过
+                    metrics.record(keyPrefix, NULL_HIT);
+                    continue;
+                }
+                R r = raw == null ? null : this.decode(keys.get(i), raw, type);
+                if (r != null) {
+                    metrics.record(keyPrefix, HIT);
+                    nearCache.put(keys.get(i), r, versions[i]);
+                    result.put(remoteIds.get(i), r);
+                } else {
+                    metrics.record(keyPrefix, MISS);
+                    missIds.add(remoteIds.get(i));
+                }
+            }
+        }
+        
+        // 未命中的id一次查库
+        if (!missIds.isEmpty()) {
+            Map<ID, R> loaded = loadFromDb(keyPrefix, () -> dbBatchFunction.apply(missIds));
+            Map<String, byte[]> found = new HashMap<>();
+            Map<String, byte[]> notFound = new HashMap<>();
+            for (ID id : missIds) {
+                R r = loaded == null ? null : loaded.get(id);
+                if (r == null) {
+                    notFound.put(keyPrefix + id, NULL_VALUE);
+                } else {
+                    result.put(id, r);
+                    found.put(keyPrefix + id, codecs.encode(r));
+                }
+            }
+            // pipeline批量回写
+            this.setBatch(found, time, unit);
+            this.setBatch(notFound, CACHE_NULL_TTL, TimeUnit.MINUTES);
+        }
+        
+        // 按传入顺序返回
+        Map<ID, R> ordered = new LinkedHashMap<>();
+        for (ID id : idList) {
+            R r = result.get(id);
+            if (r != null) {
+                ordered.put(id, r);
+            }
+        }
+        return ordered;
     }
     
     /**
      * 互斥锁缓存击穿解决方案
-     * 3次重试，重试等待时间加倍
+     * 本节点同key的并发未命中合并为一次重建，只有一个线程竞争redis锁
      * 根据id查询商铺信息
      *
      * @param id 商铺id
@@ -103,141 +406,389 @@ public class CacheClient {
         // lock key
         String lockKey = lockPrefix + id;
         
-        // 从redis查询
-        String s = this.get(key);
+        // 布隆过滤器判断不存在，直接返回
+        if (!bloomFilters.mightContain(keyPrefix, id)) {
+            metrics.record(keyPrefix, BLOOM_REJECT);
+            return null;
+        }
+        
+        // 一级缓存命中，直接返回
+        R local = nearCache.get(key, type);
+        if (local != null) {
+            metrics.record(keyPrefix, LOCAL_HIT);
+            return local;
+        }
         
-        // 缓存命中，直接返回
-        if (StrUtil.isNotBlank(s)) {
-            return JSONUtil.toBean(s, type);
+        // 从redis查询，开启提前刷新时同一次往返带回剩余过期时间
+        long version = nearCache.version(key);
+        byte[] raw;
+        long ttlMillis = -1;
+        if (earlyRefreshEnabled) {
+            List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                byte[] rawKey = rawKey(key);
+                connection.stringCommands().get(rawKey);
+                connection.keyCommands().pTtl(rawKey);
+                return null;
+            }, RedisSerializer.byteArray());
+            raw = (byte[]) results.get(0);
+            ttlMillis = (Long) results.get(1);
+        } else {
+            raw = this.getRaw(key);
         }
         
-        // 要么是null，要么是""
-        // 缓存命中，但是是空字符串
-        if (s != null) {
+        // 缓存命中，但是是空值
+        if (raw != null && raw.length == 0) {
+            metrics.record(keyPrefix, NULL_HIT);
             return null;
         }
         
+        // 缓存命中，回填一级缓存
+        R cached = raw == null ? null : this.decode(key, raw, type);
+        if (cached != null) {
+            metrics.record(keyPrefix, HIT);
+            nearCache.put(key, cached, version);
+            // 临近过期，后台提前刷新
+            if (shouldRefreshEarly(keyPrefix, ttlMillis)) {
+                long observedTtl = ttlMillis;
+                refreshAsync(key, lockKey,
+                        () -> {
+                            // 过期时间变长说明已被其他节点刷新
+                            Long ttl = stringRedisTemplate.getExpire(key, TimeUnit.MILLISECONDS);
+                            return ttl == null || ttl <= observedTtl;
+                        },
+                        () -> loadFromDb(keyPrefix, () -> dbFunction.apply(id)),
+                        r1 -> this.set(key, r1, time, unit));
+            }
+            return cached;
+        }
+        
+        // 未命中，本节点只有一个线程去竞争互斥锁重建，其余线程等待它的结果
+        metrics.record(keyPrefix, MISS);
+        return singleFlight.execute(key,
+                () -> rebuildWithMutex(keyPrefix, key, lockKey, id, type, dbFunction, time, unit, version),
+                SINGLE_FLIGHT_TIMEOUT_MILLIS);
+    }
+    
+    /**
+     * 互斥锁重建缓存
+     * 3次重试，重试等待时间加倍，每次等待后先查redis
+     * 重试用完说明其他节点重建过慢，直接查库返回，不写缓存
+     *
+     * @param version 读redis之前的一级缓存版本号
+     * @return 数据
+     */
+    private <R, ID> R rebuildWithMutex(String keyPrefix, String key, String lockKey, ID id, Class<R> type, Function<ID, R> dbFunction, Long time, TimeUnit unit, long version) {
         int retryTimes = 3; // 重试次数
         int waitTime = 50; // 重试等待时间
         
         for (int i = 0; i < retryTimes; i++) {
             // 获取互斥锁
-            try {
-                boolean isLock = tryLock(lockKey);
-                
-                // 获取锁失败，休眠重试
-                if (!isLock) {
+            String owner = tryLock(lockKey);
+            
+            // 获取锁失败，其他节点在重建，休眠后查询redis
+            if (owner == null) {
+                metrics.record(keyPrefix, LOCK_CONTENTION);
+                try {
                     Thread.sleep(waitTime);
-                    waitTime *= 2;
-                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
+                waitTime *= 2;
                 
+                byte[] raw = this.getRaw(key);
+                if (raw != null && raw.length == 0) {
+                    return null;
+                }
+                R cached = raw == null ? null : this.decode(key, raw, type);
+                if (cached != null) {
+                    nearCache.put(key, cached, version);
+                    return cached;
+                }
+                continue;
+            }
+            
+            try {
                 // 获取锁成功，再次查询redis
-                s = this.get(key);
-                if (StrUtil.isNotBlank(s)) {
-                    return JSONUtil.toBean(s, type);
+                byte[] raw = this.getRaw(key);
+                R cached = raw == null || raw.length == 0 ? null : this.decode(key, raw, type);
+                if (cached != null) {
+                    nearCache.put(key, cached, version);
+                    return cached;
                 }
                 
                 // 查询数据库
-                R r = dbFunction.apply(id);
-                
-                // 模拟缓存重建延时
-//                Thread.sleep(100);
+                R r = loadFromDb(keyPrefix, () -> dbFunction.apply(id));
                 
                 if (r == null) {
                     // 不存在，将空值写入redis
-                    this.set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                    this.setRaw(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
                     // 返回失败
                     return null;
                 }
                 
                 // 数据库中存在，写入redis
-                this.set(key, JSONUtil.toJsonStr(r), time, unit);
+                this.set(key, r, time, unit);
+                nearCache.put(key, r, version);
                 
                 // 返回shop
                 return r;
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return null;
             } finally {
-                // 释放锁
-                unlock(lockKey);
+                // 释放锁，只释放自己拿到的锁
+                unlock(lockKey, owner);
             }
         }
-        // 重试次数用完，返回null
-        return null;
+        
+        // 重试次数用完，直接查库，避免误报不存在
+        metrics.record(keyPrefix, RETRIES_EXHAUSTED);
+        log.warn("获取重建锁失败，直接查询数据库：{}", key);
+        return loadFromDb(keyPrefix, () -> dbFunction.apply(id));
     }
     
     /**
      * 逻辑过期解决缓存击穿
+     * 过期数据直接返回旧值，后台异步刷新
+     * 同一个key本节点只提交一次重建，集群内通过互斥锁只重建一次
      *
-     * @param id 商铺id
-     * @return 商铺详情数据
+     * @param keyPrefix  缓存key前缀
+     * @param lockPrefix 锁key前缀
+     * @param id         id
+     * @param type       返回类型
+     * @param dbFunction 数据库查询函数
+     * @param time       逻辑过期时间
+     * @param unit       时间单位
+     * @return 数据，可能是过期的旧值
      */
-    public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFunction, Long time, TimeUnit unit) {
+    public <R, ID> R queryWithLogicalExpire(String keyPrefix, String lockPrefix, ID id, Class<R> type, Function<ID, R> dbFunction, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
         
-        String s = this.get(key);
+        // 布隆过滤器判断不存在，直接返回
+        if (!bloomFilters.mightContain(keyPrefix, id)) {
+            metrics.record(keyPrefix, BLOOM_REJECT);
+            return null;
+        }
+        
+        byte[] raw = this.getRaw(key);
         
-        // 未命中，直接返回
-        if (StrUtil.isBlank(s)) {
+        // 缓存的空值
+        if (raw != null && raw.length == 0) {
+            metrics.record(keyPrefix, NULL_HIT);
             return null;
         }
         
         // 反序列化为对象
-        RedisData redisData = JSONUtil.toBean(s, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        RedisData redisData = raw == null ? null : this.decodeLogical(key, raw, type);
+        
+        // 未命中（未预热或被删除），同步加载，本节点同key只查一次库
+        if (redisData == null) {
+            metrics.record(keyPrefix, MISS);
+            return singleFlight.execute(key, () -> {
+                R r = loadFromDb(keyPrefix, () -> dbFunction.apply(id));
+                if (r == null) {
+                    this.setRaw(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
+                    return null;
+                }
+                this.setWithLogicalExpire(key, r, time, unit);
+                return r;
+            }, SINGLE_FLIGHT_TIMEOUT_MILLIS);
+        }
+        
+        metrics.record(keyPrefix, HIT);
+        R r = type.cast(redisData.getData());
         
-        LocalDateTime expireTime = redisData.getExpireTime();
-        // 未过期，直接返回
-        if (expireTime.isAfter(LocalDateTime.now())) {
+        // 未过期且不需要提前刷新，直接返回
+        long remainingMillis = Duration.between(LocalDateTime.now(), redisData.getExpireTime()).toMillis();
+        if (remainingMillis > 0 && !shouldRefreshEarly(keyPrefix, remainingMillis)) {
             return r;
         }
         
-        // 过期，异步更新缓存
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        if (isLock) {
-            // 二次检查
-            s = this.get(key);
-            if (StrUtil.isNotBlank(s)) {
-                unlock(lockKey);
-                return JSONUtil.toBean(s, type);
-            }
-            
-            // 独立线程更新缓存
-            CACHE_REBUILD_POOL.submit(() -> {
+        // 过期或临近过期，异步更新缓存，返回旧数据
+        LocalDateTime observedExpireTime = redisData.getExpireTime();
+        refreshAsync(key, lockPrefix + id,
+                () -> isLogicalExpireStale(key, observedExpireTime),
+                () -> loadFromDb(keyPrefix, () -> dbFunction.apply(id)),
+                r1 -> this.setWithLogicalExpire(key, r1, time, unit));
+        return r;
+    }
+    
+    /**
+     * 逻辑过期数据是否仍需刷新
+     * 过期时间比触发刷新时看到的更晚，说明已被其他节点刷新
+     */
+    private boolean isLogicalExpireStale(String key, LocalDateTime observedExpireTime) {
+        byte[] raw = this.getRaw(key);
+        if (raw == null || raw.length == 0) {
+            return true;
+        }
+        try {
+            return !codecs.logicalExpireTime(raw).isAfter(observedExpireTime);
+        } catch (Exception e) {
+            return true;
+        }
+    }
+    
+    /**
+     * 后台异步刷新缓存
+     * 逻辑过期和提前刷新共用；请求线程只提交任务，获取锁、二次检查、查库都在重建线程中执行
+     *
+     * @param key        缓存key
+     * @param lockKey    锁key
+     * @param stillStale 拿到锁后二次检查是否仍需刷新
+     * @param loader     数据加载
+     * @param writer     写回缓存
+     */
+    private <R> void refreshAsync(String key, String lockKey, BooleanSupplier stillStale, Supplier<R> loader, Consumer<R> writer) {
+        // 本节点已在重建
+        if (!rebuildingKeys.add(key)) {
+            return;
+        }
+        
+        try {
+            rebuildPool.execute(() -> {
                 try {
-                    R r1 = dbFunction.apply(id);
-                    this.setWithLogicalExpire(key, r1, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException("更新缓存失败");
+                    refresh(key, lockKey, stillStale, loader, writer);
                 } finally {
-                    unlock(lockKey);
+                    rebuildingKeys.remove(key);
                 }
             });
+        } catch (RejectedExecutionException e) {
+            // 线程池已满，放弃本次重建，继续返回旧数据
+            rebuildRejected.increment();
+            metrics.record(CacheMetrics.prefixOf(key), REBUILD_REJECTED);
+            log.warn("缓存重建任务被拒绝：{}", key);
+            rebuildingKeys.remove(key);
         }
-        // 返回旧数据
-        return r;
+    }
+    
+    /**
+     * 在重建线程中刷新缓存，任何异常都不会遗留锁
+     */
+    private <R> void refresh(String key, String lockKey, BooleanSupplier stillStale, Supplier<R> loader, Consumer<R> writer) {
+        String owner = null;
+        try {
+            // 其他节点在重建
+            owner = tryLock(lockKey);
+            if (owner == null) {
+                metrics.record(CacheMetrics.prefixOf(key), LOCK_CONTENTION);
+                return;
+            }
+            
+            // 二次检查，拿到锁之前可能已被其他节点刷新
+            if (!stillStale.getAsBoolean()) {
+                return;
+            }
+            
+            R r = loader.get();
+            if (r == null) {
+                // 数据已被删除
+                this.setRaw(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
+            } else {
+                writer.accept(r);
+            }
+        } catch (Exception e) {
+            log.error("更新缓存失败：{}", key, e);
+        } finally {
+            if (owner != null) {
+                unlock(lockKey, owner);
+            }
+        }
+    }
+    
+    /**
+     * 解码，失败按未命中处理（例如字段版本升级后的旧数据）
+     */
+    private <R> R decode(String key, byte[] raw, Type type) {
+        try {
+            return codecs.decode(raw, type);
+        } catch (Exception e) {
+            log.warn("缓存解码失败，按未命中处理：{}", key, e);
+            return null;
+        }
+    }
+    
+    /**
+     * 解码逻辑过期数据，失败按未命中处理
+     */
+    private RedisData decodeLogical(String key, byte[] raw, Type type) {
+        try {
+            return codecs.decodeLogical(raw, type);
+        } catch (Exception e) {
+            log.warn("缓存解码失败，按未命中处理：{}", key, e);
+            return null;
+        }
+    }
+    
+    private byte[] getRaw(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey(key)));
+    }
+    
+    /**
+     * 写入编码后的value
+     *
+     * @param time 过期时间，为null时不过期，否则加随机抖动
+     */
+    private void setRaw(String key, byte[] value, Long time, TimeUnit unit) {
+        Expiration expiration = time == null ? Expiration.persistent() : Expiration.milliseconds(jitterMillis(time, unit));
+        if (value.length > 0) {
+            metrics.recordPayload(CacheMetrics.prefixOf(key), value.length);
+        }
+        stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.stringCommands().set(rawKey(key), value, expiration, RedisStringCommands.SetOption.upsert()));
+    }
+    
+    /**
+     * pipeline批量写入，一次往返
+     *
+     * @param values key -> 编码后的value
+     * @param time   过期时间，为null时不过期
+     * @param unit   时间单位
+     */
+    private void setBatch(Map<String, byte[]> values, Long time, TimeUnit unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        values.forEach((key, value) -> {
+            if (value.length > 0) {
+                metrics.recordPayload(CacheMetrics.prefixOf(key), value.length);
+            }
+        });
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            // 每个key单独抖动，避免同一批同时过期
+            values.forEach((key, value) -> connection.stringCommands().set(
+                    rawKey(key),
+                    value,
+                    time == null ? Expiration.persistent() : Expiration.milliseconds(jitterMillis(time, unit)),
+                    RedisStringCommands.SetOption.upsert()
+            ));
+            return null;
+        });
+    }
+    
+    private byte[] rawKey(String key) {
+        return StringRedisSerializer.UTF_8.serialize(key);
     }
     
     /**
      * 释放锁
+     * lua判断持有者后删除，重建超过锁的过期时间时不会删掉其他节点的锁
      *
      * @param lockKey 锁key
+     * @param owner   获取锁时返回的持有者标识
      */
-    private void unlock(String lockKey) {
-        stringRedisTemplate.delete(lockKey);
+    private void unlock(String lockKey, String owner) {
+        stringRedisTemplate.execute(UNLOCK_LUA, Collections.singletonList(lockKey), owner);
     }
     
     /**
      * 获取锁
+     * value为节点标识 + 线程id，释放时校验；异步刷新在其他线程释放，持有者标识随任务传递
      *
      * @param lockKey 锁key
-     * @return 是否获取成功
+     * @return 持有者标识，获取失败返回null
      */
-    private boolean tryLock(String lockKey) {
-        Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, "1", 10, TimeUnit.SECONDS);
-        return Boolean.TRUE.equals(success);
+    private String tryLock(String lockKey) {
+        String owner = lockOwnerPrefix + Thread.currentThread().threadId();
+        Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, owner, LOCK_TTL_SECONDS, TimeUnit.SECONDS);
+        return Boolean.TRUE.equals(success) ? owner : null;
     }
 }
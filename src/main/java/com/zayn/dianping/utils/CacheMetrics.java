@@ -0,0 +1,220 @@
+package com.zayn.dianping.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存指标，按key前缀统计
+ * 命中、空值命中、未命中、锁竞争、重试耗尽、重建耗时、序列化大小
+ * 计数全部用 LongAdder，热点路径上只有一次 map 查找和一次累加
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午6:05
+ */
+@Component
+public class CacheMetrics {
+    private static final int MAX_PREFIXES = 100; // 前缀数量上限，防止key设计不规范导致无限增长
+    private static final String OTHER_PREFIX = "other";
+    // 重建耗时分桶上界（毫秒）
+    private static final long[] REBUILD_MILLIS_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+    // 序列化大小分桶上界（字节）
+    private static final long[] PAYLOAD_BYTES_BOUNDS = {64, 128, 256, 512, 1024, 2048, 4096, 8192, 16384, 65536};
+    
+    private final Map<String, PrefixStats> stats = new ConcurrentHashMap<>();
+    
+    /**
+     * 缓存事件
+     */
+    public enum Event {
+        LOCAL_HIT, // 一级缓存命中
+        HIT, // redis命中
+        NULL_HIT, // redis命中空值
+        MISS, // 未命中
+        BLOOM_REJECT, // 布隆过滤器拦截
+        LOCK_CONTENTION, // 获取重建锁失败
+        RETRIES_EXHAUSTED, // 重试次数用完，直接查库
+        REBUILD_REJECTED // 重建任务被线程池拒绝
+    }
+    
+    /**
+     * 由缓存key推断前缀：截取到第一个以数字开头的段之前
+     * 例如 cache:shop:1 -> cache:shop:，cache:shop:type:1:2 -> cache:shop:type:
+     *
+     * @param key 缓存key
+     * @return 前缀
+     */
+    public static String prefixOf(String key) {
+        int start = 0;
+        while (start < key.length()) {
+            if (Character.isDigit(key.charAt(start))) {
+                return key.substring(0, start);
+            }
+            int next = key.indexOf(':', start);
+            if (next < 0) {
+                break;
+            }
+            start = next + 1;
+        }
+        return key;
+    }
+    
+    /**
+     * 记录一次事件
+     *
+     * @param prefix 缓存key前缀
+     * @param event  事件
+     */
+    public void record(String prefix, Event event) {
+        stats(prefix).counters[event.ordinal()].increment();
+    }
+    
+    /**
+     * 记录一次查库重建耗时
+     *
+     * @param prefix 缓存key前缀
+     * @param nanos  耗时（纳秒）
+     */
+    public void recordRebuild(String prefix, long nanos) {
+        stats(prefix).rebuildMillis.record(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+    
+    /**
+     * 记录一次写入的序列化大小
+     *
+     * @param prefix 缓存key前缀
+     * @param bytes  字节数
+     */
+    public void recordPayload(String prefix, int bytes) {
+        stats(prefix).payloadBytes.record(bytes);
+    }
+    
+    /**
+     * 当前指标快照
+     *
+     * @return 前缀 -> 指标
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new TreeMap<>();
+        stats.forEach((prefix, s) -> result.put(prefix, s.snapshot()));
+        return result;
+    }
+    
+    /**
+     * 清空所有指标
+     */
+    public void reset() {
+        stats.clear();
+    }
+    
+    private PrefixStats stats(String prefix) {
+        PrefixStats s = stats.get(prefix);
+        if (s != null) {
+            return s;
+        }
+        if (stats.size() >= MAX_PREFIXES) {
+            prefix = OTHER_PREFIX;
+        }
+        return stats.computeIfAbsent(prefix, p -> new PrefixStats());
+    }
+    
+    /**
+     * 单个前缀的指标
+     */
+    private static class PrefixStats {
+        private final LongAdder[] counters = new LongAdder[Event.values().length];
+        private final Histogram rebuildMillis = new Histogram(REBUILD_MILLIS_BOUNDS);
+        private final Histogram payloadBytes = new Histogram(PAYLOAD_BYTES_BOUNDS);
+        
+        PrefixStats() {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = new LongAdder();
+            }
+        }
+        
+        Map<String, Object> snapshot() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            for (Event event : Event.values()) {
+                result.put(event.name().toLowerCase(), counters[event.ordinal()].sum());
+            }
+            long hits = counters[Event.LOCAL_HIT.ordinal()].sum()
+                    + counters[Event.HIT.ordinal()].sum()
+                    + counters[Event.NULL_HIT.ordinal()].sum();
+            long total = hits + counters[Event.MISS.ordinal()].sum();
+            result.put("hit_ratio", total == 0 ? 0.0 : (double) hits / total);
+            result.put("rebuild_millis", rebuildMillis.snapshot());
+            result.put("payload_bytes", payloadBytes.snapshot());
+            return result;
+        }
+    }
+    
+    /**
+     * 固定分桶直方图，分位数取所在桶的上界
+     */
+    private static class Histogram {
+        private final long[] bounds;
+        private final LongAdder[] buckets; // 最后一个桶为超出上界的部分
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        
+        Histogram(long[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+        
+        void record(long value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+        
+        Map<String, Object> snapshot() {
+            long[] counts = new long[buckets.length];
+            long count = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                count += counts[i];
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("count", count);
+            result.put("mean", count == 0 ? 0.0 : (double) sum.sum() / count);
+            result.put("max", max.get());
+            result.put("p50", percentile(counts, count, 0.50));
+            result.put("p99", percentile(counts, count, 0.99));
+            Map<String, Long> distribution = new LinkedHashMap<>();
+            for (int i = 0; i < counts.length; i++) {
+                distribution.put(i < bounds.length ? "le_" + bounds[i] : "inf", counts[i]);
+            }
+            result.put("buckets", distribution);
+            return result;
+        }
+        
+        private long percentile(long[] counts, long count, double p) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * p);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i < bounds.length ? bounds[i] : max.get();
+                }
+            }
+            return max.get();
+        }
+    }
+}
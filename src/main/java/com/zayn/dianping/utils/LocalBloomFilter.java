@@ -0,0 +1,197 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 进程内布隆过滤器
+ * {@link RedisBloomFilter} 的本地镜像和 {@link TokenRevocations} 共用：容量计算、bit位置计算、无锁读写
+ * 支持后台全量重建：重建期间新增的元素同时写入新旧两份，完成后替换
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:52
+ */
+public class LocalBloomFilter {
+    private final long numBits; // bit数组长度
+    private final int numHashes; // hash函数个数
+    
+    private volatile AtomicLongArray bits;
+    private volatile AtomicLongArray rebuildingBits; // 重建中的bit数组，重建期间新增的元素同时写入
+    
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                误判率
+     */
+    public LocalBloomFilter(long expectedInsertions, double fpp) {
+        this.numBits = optimalNumOfBits(expectedInsertions, fpp);
+        this.numHashes = optimalNumOfHashFunctions(expectedInsertions, numBits);
+        this.bits = newBits();
+    }
+    
+    /**
+     * bit数组长度 m = -n * ln(p) / (ln2)^2，至少64
+     *
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                误判率
+     * @return bit数
+     */
+    public static long optimalNumOfBits(long expectedInsertions, double fpp) {
+        return Math.max(64, (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+    }
+    
+    /**
+     * hash函数个数 k = m / n * ln2，至少1
+     *
+     * @param expectedInsertions 预计元素个数
+     * @param numBits            bit数
+     * @return hash函数个数
+     */
+    public static int optimalNumOfHashFunctions(long expectedInsertions, long numBits) {
+        return Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+    }
+    
+    public long numBits() {
+        return numBits;
+    }
+    
+    public int numHashes() {
+        return numHashes;
+    }
+    
+    /**
+     * 计算k个bit位置，双重hash：h1 + i * h2
+     *
+     * @param value 元素，按字符串计算
+     * @return bit位置
+     */
+    public long[] offsets(Object value) {
+        long[] hash = MurmurHash.hash128(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        long[] offsets = new long[numHashes];
+        long combined = hash[0];
+        for (int i = 0; i < numHashes; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+    
+    /**
+     * 添加元素，重建期间同时写入重建中的bit数组
+     * 写完再检查一次，添加过程中开始的重建也写入；添加完成之后才开始的重建，由重建的数据源包含该元素
+     *
+     * @param offsets bit位置
+     */
+    public void add(long[] offsets) {
+        AtomicLongArray rebuilding = rebuildingBits;
+        for (long offset : offsets) {
+            setBit(bits, offset);
+            if (rebuilding != null) {
+                setBit(rebuilding, offset);
+            }
+        }
+        AtomicLongArray started = rebuildingBits;
+        if (started != null && started != rebuilding) {
+            for (long offset : offsets) {
+                setBit(started, offset);
+            }
+        }
+    }
+    
+    /**
+     * 是否可能存在
+     *
+     * @param value 元素
+     * @return false 一定不存在；true 可能存在
+     */
+    public boolean mightContain(Object value) {
+        AtomicLongArray local = bits;
+        for (long offset : offsets(value)) {
+            if (!getBit(local, offset)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 合并redis bitmap，只增加bit不清除
+     *
+     * @param bitmap redis bitmap，每个字节高位在前
+     */
+    public void merge(byte[] bitmap) {
+        AtomicLongArray local = bits;
+        long limit = Math.min(numBits, (long) bitmap.length * 8);
+        for (long offset = 0; offset < limit; offset++) {
+            if ((bitmap[(int) (offset >>> 3)] & (0x80 >>> (offset & 7))) != 0) {
+                setBit(local, offset);
+            }
+        }
+    }
+    
+    /**
+     * 开始全量重建，用完关闭；提交之前判断仍使用旧的bit数组
+     *
+     * @return 重建
+     */
+    public Rebuild rebuild() {
+        AtomicLongArray newBits = newBits();
+        rebuildingBits = newBits;
+        return new Rebuild(newBits);
+    }
+    
+    private AtomicLongArray newBits() {
+        return new AtomicLongArray((int) ((numBits + 63) >>> 6));
+    }
+    
+    private static void setBit(AtomicLongArray array, long offset) {
+        int index = (int) (offset >>> 6);
+        long mask = 1L << (offset & 63);
+        long old;
+        do {
+            old = array.get(index);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!array.compareAndSet(index, old, old | mask));
+    }
+    
+    private static boolean getBit(AtomicLongArray array, long offset) {
+        return (array.get((int) (offset >>> 6)) & (1L << (offset & 63))) != 0;
+    }
+    
+    /**
+     * 一次全量重建
+     */
+    public final class Rebuild implements AutoCloseable {
+        private final AtomicLongArray newBits;
+        
+        private Rebuild(AtomicLongArray newBits) {
+            this.newBits = newBits;
+        }
+        
+        /**
+         * 写入重建中的bit数组
+         *
+         * @param offsets bit位置
+         */
+        public void add(long[] offsets) {
+            for (long offset : offsets) {
+                setBit(newBits, offset);
+            }
+        }
+        
+        /**
+         * 替换为重建后的bit数组
+         */
+        public void commit() {
+            bits = newBits;
+        }
+        
+        @Override
+        public void close() {
+            rebuildingBits = null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.zayn.dianping.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 进程内一级缓存
+ * 位于redis之前，缓存已反序列化的对象，热点key读取不出JVM
+ * 每个key前缀（例如 cache:shop:、login:phone:）一个独立的分区，容量分别配置，互不挤占，超出容量按LRU淘汰
+ * 命中时直接返回缓存的对象，不复制、不反射；缓存的对象和写入一级缓存的对象都是只读的，调用方不能修改，需要修改时自己复制
+ * 通过redis发布订阅广播失效消息，保证多节点一致
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:12
+ */
+@Slf4j
+@Component
+public class NearCache implements MessageListener {
+    private static final int VERSION_STRIPES = 1024; // 失效版本号分段数，2的幂
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final int defaultMaxSize;
+    private final long ttlMillis;
+    private final Map<String, Integer> maxSizes;
+    private final Map<String, Region> regions = new ConcurrentHashMap<>();
+    
+    /**
+     * @param maxSizes 各key前缀的容量，例如 {'login:phone:':10000}，未配置的前缀使用 max-size
+     */
+    public NearCache(StringRedisTemplate stringRedisTemplate,
+                     @Value("${dianping.cache.local.enabled:true}") boolean enabled,
+                     @Value("${dianping.cache.local.max-size:1000}") int defaultMaxSize,
+                     @Value("${dianping.cache.local.ttl-seconds:60}") long ttlSeconds,
+                     @Value("#{${dianping.cache.local.max-sizes:{:}}}") Map<String, Integer> maxSizes) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+        this.defaultMaxSize = defaultMaxSize;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.maxSizes = maxSizes;
+    }
+    
+    /**
+     * 读取一级缓存
+     *
+     * @param key  缓存key
+     * @param type 返回类型
+     * @return 命中返回缓存的对象（只读），未命中返回null
+     */
+    public <R> R get(String key, Class<R> type) {
+        if (!enabled) {
+            return null;
+        }
+        // 不刷新访问时间，保证过期时间是写入后的绝对时间
+        Object value = region(key).cache.get(key, false);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+    
+    /**
+     * 当前key的失效版本号，读redis之前获取，写入一级缓存时传入
+     *
+     * @param key 缓存key
+     * @return 版本号
+     */
+    public long version(String key) {
+        return enabled ? region(key).version(key) : 0;
+    }
+    
+    /**
+     * 写入一级缓存
+     * 读取期间该key（或同一分段的key）发生过失效则放弃写入，避免旧值回填
+     *
+     * @param key         缓存key
+     * @param value       已反序列化的对象，写入后不能再修改
+     * @param readVersion 读redis之前的版本号
+     */
+    public void put(String key, Object value, long readVersion) {
+        if (!enabled || value == null) {
+            return;
+        }
+        Region region = region(key);
+        if (region.version(key) != readVersion) {
+            return;
+        }
+        region.cache.put(key, value);
+    }
+    
+    /**
+     * 失效本节点缓存并广播给其他节点
+     *
+     * @param key 缓存key
+     */
+    public void invalidate(String key) {
+        evict(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+    
+    /**
+     * 只失效本节点缓存
+     *
+     * @param key 缓存key
+     */
+    public void evict(String key) {
+        Region region = regions.get(CacheMetrics.prefixOf(key));
+        if (region != null) {
+            region.evict(key);
+        }
+    }
+    
+    /**
+     * 收到其他节点（也包括自己）的失效广播
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到缓存失效广播：{}", key);
+        evict(key);
+    }
+    
+    private Region region(String key) {
+        return regions.computeIfAbsent(CacheMetrics.prefixOf(key),
+                prefix -> new Region(maxSizes.getOrDefault(prefix, defaultMaxSize), ttlMillis));
+    }
+    
+    /**
+     * 一个key前缀的分区
+     * 失效版本号按key的hash分段，失效只影响同一分段的回填
+     */
+    private static final class Region {
+        private final LRUCache<String, Object> cache;
+        private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+        
+        private Region(int maxSize, long ttlMillis) {
+            this.cache = CacheUtil.newLRUCache(maxSize, ttlMillis);
+        }
+        
+        private long version(String key) {
+            return versions.get(stripe(key));
+        }
+        
+        private void evict(String key) {
+            versions.incrementAndGet(stripe(key));
+            cache.remove(key);
+        }
+        
+        private static int stripe(String key) {
+            int h = key.hashCode();
+            return (h ^ (h >>> 16)) & (VERSION_STRIPES - 1);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.zayn.dianping.utils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 虚拟线程pinning诊断
+ * 虚拟线程在synchronized中或本地方法中阻塞时无法卸载，会占住平台线程（pinning），常见于JDBC驱动和synchronized中的IO
+ * 通过JFR的 jdk.VirtualThreadPinned 事件监听超过阈值的pinning，按调用栈汇总，同一调用栈只打印一次完整栈，之后每100次打印一次
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:25
+ */
+@Slf4j
+@Component
+public class PinningMonitor {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_FRAMES = 12;
+    
+    private final WorkerThreads workerThreads;
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>(); // 调用栈 -> 次数
+    
+    @Value("${dianping.threads.pinning-diagnostics.enabled:true}")
+    private boolean enabled;
+    
+    // pinning超过该时间才记录
+    @Value("${dianping.threads.pinning-diagnostics.threshold-millis:20}")
+    private long thresholdMillis;
+    
+    private RecordingStream stream;
+    
+    public PinningMonitor(WorkerThreads workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+    
+    @PostConstruct
+    private void init() {
+        if (!enabled || !workerThreads.isVirtual()) {
+            return;
+        }
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMillis)).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::onPinned);
+        stream.startAsync();
+        log.info("虚拟线程pinning诊断已开启，阈值{}ms", thresholdMillis);
+    }
+    
+    @PreDestroy
+    private void destroy() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+    
+    private void onPinned(RecordedEvent event) {
+        String stack = format(event.getStackTrace());
+        LongAdder count = counts.computeIfAbsent(stack, k -> new LongAdder());
+        count.increment();
+        long n = count.sum();
+        if (n == 1) {
+            log.warn("虚拟线程pinning {}ms，线程：{}\n{}", event.getDuration().toMillis(),
+                    event.getThread() == null ? "unknown" : event.getThread().getJavaName(), stack);
+        } else if (n % 100 == 0) {
+            log.warn("虚拟线程pinning已发生{}次，最近一次{}ms，调用栈：{}", n, event.getDuration().toMillis(),
+                    stack.lines().findFirst().orElse("unknown").trim());
+        }
+    }
+    
+    private static String format(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "unknown";
+        }
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        return frames.stream()
+                     .limit(MAX_FRAMES)
+                     .map(frame -> "\tat " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                             + "(line " + frame.getLineNumber() + ")")
+                     .collect(Collectors.joining("\n"));
+    }
+}
@@ -0,0 +1,126 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.zayn.dianping.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * 分布式限流
+ * GCRA算法，一个lua脚本完成判断和更新，每个客户端在redis中只有一个key，空闲后自动过期
+ * 本地预过滤：redis拒绝时会返回还需等待的时间，这段时间内该客户端的请求一定会被拒绝，直接在本地拒绝，不再访问redis
+ * redis不可用时放行，限流不能影响正常请求
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:35
+ */
+@Slf4j
+@Component
+public class RateLimiter {
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+    
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("lua/rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+    }
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    // 限流key -> 解封时间，过期时间即等待时间
+    private final LRUCache<String, Long> blocked;
+    private final Map<String, RuleStats> stats = new ConcurrentHashMap<>();
+    
+    public RateLimiter(StringRedisTemplate stringRedisTemplate,
+                       @Value("${dianping.rate-limit.enabled:true}") boolean enabled,
+                       @Value("${dianping.rate-limit.local.max-size:100000}") int maxSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+        this.blocked = CacheUtil.newLRUCache(maxSize);
+    }
+    
+    /**
+     * 尝试通过
+     *
+     * @param rule         规则名称
+     * @param client       客户端标识，例如ip、用户id、手机号
+     * @param limit        每个周期允许的请求数
+     * @param periodMillis 周期（毫秒）
+     * @return 0 放行；大于0 被拒绝，为还需等待的毫秒数
+     */
+    public long tryAcquire(String rule, String client, int limit, long periodMillis) {
+        if (!enabled) {
+            return 0;
+        }
+        RuleStats ruleStats = stats.computeIfAbsent(rule, k -> new RuleStats());
+        String key = RATE_LIMIT_KEY + rule + ":" + client;
+        long now = System.currentTimeMillis();
+        
+        // 本地预过滤
+        Long until = blocked.get(key, false);
+        if (until != null && until > now) {
+            ruleStats.rejectedLocal.increment();
+            return until - now;
+        }
+        
+        long interval = Math.max(1, periodMillis / limit);
+        Long waitMillis;
+        try {
+            waitMillis = stringRedisTemplate.execute(RATE_LIMIT_SCRIPT, Collections.singletonList(key),
+                    String.valueOf(interval), String.valueOf(periodMillis));
+        } catch (Exception e) {
+            ruleStats.errors.increment();
+            log.warn("限流判断失败，放行：{}", key, e);
+            return 0;
+        }
+        if (waitMillis == null || waitMillis <= 0) {
+            ruleStats.allowed.increment();
+            return 0;
+        }
+        blocked.put(key, now + waitMillis, waitMillis);
+        ruleStats.rejectedRemote.increment();
+        return waitMillis;
+    }
+    
+    /**
+     * 各规则的放行、拒绝次数
+     *
+     * @return 规则 -> 指标
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        stats.forEach((rule, ruleStats) -> snapshot.put(rule, Map.of(
+                "allowed", ruleStats.allowed.sum(),
+                "rejected_local", ruleStats.rejectedLocal.sum(),
+                "rejected_redis", ruleStats.rejectedRemote.sum(),
+                "errors", ruleStats.errors.sum()
+        )));
+        return snapshot;
+    }
+    
+    /**
+     * 清空指标
+     */
+    public void reset() {
+        stats.clear();
+    }
+    
+    private static final class RuleStats {
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder rejectedLocal = new LongAdder(); // 本地预过滤拒绝
+        private final LongAdder rejectedRemote = new LongAdder(); // redis判断拒绝
+        private final LongAdder errors = new LongAdder(); // redis不可用放行
+    }
+}
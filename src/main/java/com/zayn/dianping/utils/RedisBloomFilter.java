@@ -0,0 +1,201 @@
+package com.zayn.dianping.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import static com.zayn.dianping.utils.RedisConstants.BLOOM_ADD_CHANNEL;
+
+/**
+ * 布隆过滤器，解决缓存穿透
+ * redis bitmap 为准，本地保存一份镜像，判断只查本地，随机id枚举既不会访问数据库也不会访问redis
+ * 新增的数据写入redis后广播，各节点同步到本地镜像；广播可能丢失，由 {@link BloomFilters} 定期从redis合并一次兜底
+ * 重建开始和结束时持有写锁，新增持有读锁，保证新增要么写入临时key，要么在重建开始之前完成；
+ * 调用方需要在数据提交之后再新增，否则重建扫描不到未提交的数据
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午2:10
+ */
+@Slf4j
+public class RedisBloomFilter {
+    private static final String KEY_PREFIX = "bf:";
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String name;
+    private final String key;
+    private final LocalBloomFilter local; // 本地镜像
+    private final ReentrantLock rebuildLock = new ReentrantLock(); // 重建期间有数据库和redis IO，不用synchronized，避免虚拟线程pinning
+    private final ReentrantReadWriteLock switchLock = new ReentrantReadWriteLock(); // 新增读锁，重建开始和替换时写锁
+    
+    private volatile boolean rebuilding; // 重建中，新增的数据同时写入临时key
+    private volatile boolean ready; // 未加载完成前全部放行
+    
+    /**
+     * @param stringRedisTemplate redis
+     * @param name                过滤器名称
+     * @param expectedInsertions  预计数据量
+     * @param fpp                 误判率
+     */
+    public RedisBloomFilter(StringRedisTemplate stringRedisTemplate, String name, long expectedInsertions, double fpp) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.name = name;
+        this.key = KEY_PREFIX + name;
+        this.local = new LocalBloomFilter(expectedInsertions, fpp);
+        log.info("布隆过滤器{}：预计数据量{}，误判率{}，bit数{}，hash个数{}", key, expectedInsertions, fpp,
+                local.numBits(), local.numHashes());
+    }
+    
+    /**
+     * 添加元素，写入本地和redis，并通知其他节点
+     *
+     * @param value 元素
+     */
+    public void add(Object value) {
+        long[] offsets = local.offsets(value);
+        switchLock.readLock().lock();
+        try {
+            boolean writeTmp = rebuilding;
+            local.add(offsets);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                byte[] rawTmpKey = tmpKey().getBytes(StandardCharsets.UTF_8);
+                for (long offset : offsets) {
+                    connection.stringCommands().setBit(rawKey, offset, true);
+                    if (writeTmp) {
+                        connection.stringCommands().setBit(rawTmpKey, offset, true);
+                    }
+                }
+                return null;
+            });
+        } finally {
+            switchLock.readLock().unlock();
+        }
+        stringRedisTemplate.convertAndSend(BLOOM_ADD_CHANNEL, name + ":" + value);
+    }
+    
+    /**
+     * 只写入本地镜像，收到其他节点的新增广播时调用
+     *
+     * @param value 元素
+     */
+    public void addLocal(Object value) {
+        long[] offsets = local.offsets(value);
+        switchLock.readLock().lock();
+        try {
+            local.add(offsets);
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 是否可能存在，只查本地镜像
+     *
+     * @param value 元素
+     * @return false 一定不存在；true 可能存在
+     */
+    public boolean mightContain(Object value) {
+        return !ready || local.mightContain(value);
+    }
+    
+    /**
+     * 从redis加载，合并到本地镜像
+     * 只增加bit不清除，加载期间新增的数据不会丢失；其他节点重建后本地多出的bit只会增加误判，不会漏判
+     *
+     * @return redis中不存在返回false
+     */
+    public boolean load() {
+        byte[] raw = stringRedisTemplate.execute(
+                (RedisCallback<byte[]>) connection -> connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
+        if (raw == null) {
+            return false;
+        }
+        local.merge(raw);
+        ready = true;
+        log.debug("布隆过滤器{}从redis加载完成", key);
+        return true;
+    }
+    
+    /**
+     * 全量重建
+     * 写入临时key，完成后rename替换，重建期间新增的数据同时写入新旧两份
+     * 开始和替换都在写锁内，正在进行的新增先完成，不会有新增只写入旧key后被rename覆盖
+     *
+     * @param idPageLoader 按id分页加载，参数为上一页最后一个id，返回升序id列表
+     */
+    public void rebuild(Function<Long, List<Long>> idPageLoader) {
+        rebuildLock.lock();
+        try {
+            doRebuild(idPageLoader);
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+    
+    private void doRebuild(Function<Long, List<Long>> idPageLoader) {
+        String tmpKey = tmpKey();
+        stringRedisTemplate.delete(tmpKey);
+        LocalBloomFilter.Rebuild localRebuild;
+        switchLock.writeLock().lock();
+        try {
+            rebuilding = true;
+            localRebuild = local.rebuild();
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+        try {
+            long count = 0;
+            long lastId = 0;
+            List<Long> ids;
+            while (!(ids = idPageLoader.apply(lastId)).isEmpty()) {
+                List<Long> page = ids;
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    byte[] rawTmpKey = tmpKey.getBytes(StandardCharsets.UTF_8);
+                    for (Long id : page) {
+                        long[] offsets = local.offsets(id);
+                        localRebuild.add(offsets);
+                        for (long offset : offsets) {
+                            connection.stringCommands().setBit(rawTmpKey, offset, true);
+                        }
+                    }
+                    return null;
+                });
+                count += ids.size();
+                lastId = ids.get(ids.size() - 1);
+            }
+            
+            if (count == 0) {
+                // 没有数据，也要保证redis中有key，否则其他节点启动时会再次全量构建
+                stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                        connection.stringCommands().setBit(tmpKey.getBytes(StandardCharsets.UTF_8), local.numBits() - 1, false));
+            }
+            switchLock.writeLock().lock();
+            try {
+                stringRedisTemplate.rename(tmpKey, key);
+                localRebuild.commit();
+            } finally {
+                switchLock.writeLock().unlock();
+            }
+            ready = true;
+            log.info("布隆过滤器{}重建完成，共{}条", key, count);
+        } finally {
+            switchLock.writeLock().lock();
+            try {
+                rebuilding = false;
+                localRebuild.close();
+            } finally {
+                switchLock.writeLock().unlock();
+            }
+        }
+    }
+    
+    private String tmpKey() {
+        return key + ":tmp";
+    }
+}
@@ -4,7 +4,14 @@ public class RedisConstants {
     public static final String LOGIN_CODE_KEY = "login:code:";
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
-    public static final Long LOGIN_USER_TTL = 36000L;
+    public static final Long LOGIN_USER_TTL = 36000L; // 秒
+    public static final String LOGIN_USER_INDEX_KEY = "login:user:";
+    public static final String LOGIN_PHONE_KEY = "login:phone:";
+    public static final Long LOGIN_PHONE_TTL = 30L;
+    public static final String SESSION_INVALIDATE_CHANNEL = "login:invalidate";
+    public static final String SESSION_REVOKED_KEY = "login:revoked";
+    public static final String SESSION_REVOKED_USER_KEY = "login:revoked:user";
+    public static final String SESSION_REVOKED_CHANNEL = "login:revoked";
     
     public static final Long CACHE_NULL_TTL = 2L;
     
@@ -16,8 +23,21 @@ public class RedisConstants {
     public static final Long CACHE_SHOP_TYPE_TTL = 10L;
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_SESSION_COMPACTION_KEY = "lock:session:compaction";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String BLOOM_ADD_CHANNEL = "bf:add";
+    public static final String SHOP_TYPE_LIST_KEY = "cache:shop-type:list";
+    public static final String SHOP_TYPE_REFRESH_CHANNEL = "shop-type:refresh";
+    public static final String SHOP_COUNTER_STREAM = "stream:shop:counter";
     
-    public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_STOCK_KEY = "seckill:stock:"; // 旧版库存，仅用于迁移
+    public static final String SECKILL_VOUCHER_KEY = "seckill:voucher:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_ORDER_STATUS_KEY = "seckill:status:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_ORDER_STREAM = "stream:orders";
+    public static final String SECKILL_ORDER_DEAD_LETTER_STREAM = "stream:orders:dlq";
+    public static final String RATE_LIMIT_KEY = "rate:limit:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
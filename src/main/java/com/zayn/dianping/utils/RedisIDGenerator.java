@@ -1,26 +1,117 @@
 package com.zayn.dianping.utils;
 
-import lombok.RequiredArgsConstructor;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneRules;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * redis UUID生成器
+ * incr 模式：每个id一次 INCR
+ * segment 模式：一次 INCRBY 预留一段序列号，在内存中原子递增发放，用到一定比例时异步预取下一段，正常情况下不访问redis
+ * 号段取不到（redis故障）时降级为雪花算法，机器号从redis租用，序列号最高位为1，和号段发放的序列号不会重复
+ * 获取失败后的一段时间内不再访问redis，直接降级，避免每次切换号段都同步等待redis超时
  *
  * @author zayn
  * * @date 2024/7/20/下午4:46
  */
+@Slf4j
 @Component
-@RequiredArgsConstructor
 public class RedisIDGenerator {
     
     private static final long BEGIN_TIMESTAMP = 1704067200L; // 2024-1-1 00:00:00
     private static final int SEQUENCE_BITS = 32;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+    private static final long SECONDS_PER_DAY = 86400L;
+    
+    // 雪花序列号：1位标记 + 10位机器号 + 21位自增
+    private static final long SNOWFLAKE_FLAG = 1L << 31;
+    private static final int WORKER_BITS = 10;
+    private static final int COUNTER_BITS = 21;
+    private static final long MAX_WORKER = (1L << WORKER_BITS) - 1;
+    private static final long MAX_COUNTER = (1L << COUNTER_BITS) - 1;
+    private static final long WORKER_LEASE_SECONDS = 60L;
+    private static final String WORKER_KEY = "icr:worker:";
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('expire', KEYS[1], ARGV[2]) end return 0",
+            Long.class);
+    
     private final StringRedisTemplate stringRedisTemplate;
+    private final ZoneRules zoneRules = ZoneId.systemDefault().getRules();
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private final String nodeId = UUID.fastUUID().toString(true);
+    // 高位为秒，低位为当秒已发放的个数
+    private final AtomicLong snowflakeState = new AtomicLong();
+    
+    private final String mode; // incr 或 segment
+    private final int step; // 每次预留的序列号个数
+    private final double prefetchRatio; // 当前号段用到该比例时预取下一段
+    private final long retryBackoffMillis; // 号段获取失败后，多长时间内不再访问redis
+    private final boolean snowflakeEnabled; // redis故障时是否降级为雪花算法
+    
+    private ExecutorService prefetchExecutor;
+    private ScheduledExecutorService leaseExecutor;
+    private volatile long workerId = -1;
+    private volatile long leaseExpiresAt;
+    
+    public RedisIDGenerator(StringRedisTemplate stringRedisTemplate,
+                            @Value("${dianping.id.mode:segment}") String mode,
+                            @Value("${dianping.id.segment.step:1000}") int step,
+                            @Value("${dianping.id.segment.prefetch-ratio:0.8}") double prefetchRatio,
+                            @Value("${dianping.id.segment.retry-backoff-millis:1000}") long retryBackoffMillis,
+                            @Value("${dianping.id.snowflake.enabled:true}") boolean snowflakeEnabled) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.mode = mode;
+        this.step = step;
+        this.prefetchRatio = prefetchRatio;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.snowflakeEnabled = snowflakeEnabled;
+    }
+    
+    @PostConstruct
+    private void init() {
+        if (!"segment".equals(mode)) {
+            return;
+        }
+        prefetchExecutor = Executors.newSingleThreadExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("id-segment-prefetch-").setDaemon(true).build());
+        if (snowflakeEnabled) {
+            leaseExecutor = Executors.newSingleThreadScheduledExecutor(
+                    ThreadFactoryBuilder.create().setNamePrefix("id-worker-lease-").setDaemon(true).build());
+            leaseExecutor.scheduleWithFixedDelay(this::renewWorkerSafely, 0, WORKER_LEASE_SECONDS / 3, TimeUnit.SECONDS);
+        }
+    }
+    
+    @PreDestroy
+    private void destroy() {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+        }
+        if (leaseExecutor != null) {
+            leaseExecutor.shutdownNow();
+            if (workerId >= 0) {
+                // 释放机器号
+                stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(WORKER_KEY + workerId), nodeId, "1");
+            }
+        }
+    }
     
     /**
      * 符号位1
@@ -31,18 +122,228 @@ public class RedisIDGenerator {
      * @return id
      */
     public long nextId(String keyPrefix) {
-        // 时间戳
-        LocalDateTime now = LocalDateTime.now();
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
+        // 时间戳，按本地时间计算，和日期key保持一致
+        long nowSecond = localSecond();
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
+        long day = Math.floorDiv(nowSecond, SECONDS_PER_DAY);
         
-        
-        // 当前日期
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
         // 序列号
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        long count;
+        if ("segment".equals(mode)) {
+            count = buffers.computeIfAbsent(keyPrefix, SegmentBuffer::new).next(day);
+            if (count < 0) {
+                // 取不到号段，降级
+                return nextSnowflakeId();
+            }
+        } else {
+            count = increment(keyPrefix, day, 1);
+        }
         
         // 拼接返回
         return (timestamp << SEQUENCE_BITS) | count;
     }
+    
+    private long localSecond() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() + zoneRules.getOffset(now).getTotalSeconds();
+    }
+    
+    private long increment(String keyPrefix, long day, long delta) {
+        String date = LocalDate.ofEpochDay(day).format(DATE_FORMATTER);
+        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date, delta);
+        if (count == null) {
+            throw new IllegalStateException("序列号获取失败");
+        }
+        return count;
+    }
+    
+    /**
+     * 雪花算法，同一秒内自增
+     * 时钟回拨或当秒用完时沿用/借用后面的秒，时间戳取实际使用的秒，保证不重复
+     */
+    private long nextSnowflakeId() {
+        long worker = workerId;
+        if (worker < 0 || System.currentTimeMillis() > leaseExpiresAt) {
+            throw new IllegalStateException("号段获取失败且没有可用的机器号");
+        }
+        while (true) {
+            long state = snowflakeState.get();
+            long stateSecond = state >>> COUNTER_BITS;
+            long counter = state & MAX_COUNTER;
+            long useSecond = Math.max(localSecond(), stateSecond);
+            long nextCounter = useSecond == stateSecond ? counter + 1 : 0;
+            if (nextCounter > MAX_COUNTER) {
+                useSecond++;
+                nextCounter = 0;
+            }
+            if (snowflakeState.compareAndSet(state, (useSecond << COUNTER_BITS) | nextCounter)) {
+                long timestamp = useSecond - BEGIN_TIMESTAMP;
+                return (timestamp << SEQUENCE_BITS) | SNOWFLAKE_FLAG | (worker << COUNTER_BITS) | nextCounter;
+            }
+        }
+    }
+    
+    private void renewWorkerSafely() {
+        try {
+            renewWorker();
+        } catch (Exception e) {
+            // 租约未过期前继续使用当前机器号
+            log.warn("机器号续约失败", e);
+        }
+    }
+    
+    /**
+     * 租用或续约机器号，SET NX EX 抢占一个空闲的机器号
+     */
+    private void renewWorker() {
+        long now = System.currentTimeMillis();
+        if (workerId >= 0) {
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                    Collections.singletonList(WORKER_KEY + workerId), nodeId, String.valueOf(WORKER_LEASE_SECONDS));
+            if (renewed != null && renewed == 1) {
+                leaseExpiresAt = now + TimeUnit.SECONDS.toMillis(WORKER_LEASE_SECONDS);
+                return;
+            }
+            log.warn("机器号{}租约已失效，重新租用", workerId);
+            workerId = -1;
+        }
+        for (long i = 0; i <= MAX_WORKER; i++) {
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                                                  .setIfAbsent(WORKER_KEY + i, nodeId, WORKER_LEASE_SECONDS, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(acquired)) {
+                leaseExpiresAt = now + TimeUnit.SECONDS.toMillis(WORKER_LEASE_SECONDS);
+                workerId = i;
+                log.info("租用机器号{}", i);
+                return;
+            }
+        }
+        log.warn("没有空闲的机器号");
+    }
+    
+    /**
+     * 号段，[start, end] 属于某一天
+     */
+    private record Segment(long day, long start, long end, AtomicLong cursor) {
+        Segment(long day, long end, int step) {
+            this(day, end - step + 1, end, new AtomicLong(end - step + 1));
+        }
+    }
+    
+    /**
+     * 单个key前缀的双号段缓冲，当前号段用到一定比例时异步预取下一段
+     */
+    private class SegmentBuffer {
+        private final String keyPrefix;
+        private final AtomicBoolean prefetching = new AtomicBoolean();
+        // 切换号段时可能同步访问redis，不用synchronized，避免虚拟线程pinning
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Segment current;
+        private volatile Segment next;
+        private volatile long retryAt; // 上次获取失败后，在此时间之前不访问redis
+        
+        SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+        
+        /**
+         * 取序列号
+         *
+         * @return 序列号，取不到号段时返回-1
+         */
+        long next(long day) {
+            while (true) {
+                Segment segment = current;
+                if (segment != null && segment.day() == day) {
+                    long value = segment.cursor().getAndIncrement();
+                    if (value <= segment.end()) {
+                        // 预取失败后，后续的请求在退避结束后再次触发
+                        if (value - segment.start() >= (long) (step * prefetchRatio) && next == null && !prefetching.get()) {
+                            prefetch(segment);
+                        }
+                        return value;
+                    }
+                }
+                if (!switchSegment(segment, day)) {
+                    return -1;
+                }
+            }
+        }
+        
+        /**
+         * 切换号段，优先使用预取好的号段，没有则同步获取；退避期间不访问redis
+         *
+         * @return 是否切换成功
+         */
+        private boolean switchSegment(Segment exhausted, long day) {
+            if (inBackoff()) {
+                return false;
+            }
+            lock.lock();
+            try {
+                if (current != exhausted) {
+                    // 其他线程已切换
+                    return true;
+                }
+                Segment prefetched = next;
+                next = null;
+                if (prefetched != null && prefetched.day() == day) {
+                    current = prefetched;
+                    return true;
+                }
+                if (inBackoff()) {
+                    // 等锁期间其他线程已获取失败
+                    return false;
+                }
+                current = fetch(day);
+                return true;
+            } catch (Exception e) {
+                log.error("号段获取失败：{}，{}毫秒内直接降级", keyPrefix, retryBackoffMillis, e);
+                retryAt = System.currentTimeMillis() + retryBackoffMillis;
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        private boolean inBackoff() {
+            return System.currentTimeMillis() < retryAt;
+        }
+        
+        private void prefetch(Segment segment) {
+            if (inBackoff() || !prefetching.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                prefetchExecutor.execute(() -> {
+                    try {
+                        Segment fetched = fetch(segment.day());
+                        lock.lock();
+                        try {
+                            if (current == segment) {
+                                next = fetched;
+                            }
+                        } finally {
+                            lock.unlock();
+                        }
+                    } catch (Exception e) {
+                        // 退避结束后再次预取，或用完后同步获取
+                        log.warn("号段预取失败：{}", keyPrefix, e);
+                        retryAt = System.currentTimeMillis() + retryBackoffMillis;
+                    } finally {
+                        prefetching.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                prefetching.set(false);
+            }
+        }
+        
+        private Segment fetch(long day) {
+            long end = increment(keyPrefix, day, step);
+            if (end >= SNOWFLAKE_FLAG) {
+                throw new IllegalStateException("当天序列号已用完：" + keyPrefix);
+            }
+            return new Segment(day, end, step);
+        }
+    }
 }
@@ -0,0 +1,220 @@
+package com.zayn.dianping.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.zayn.dianping.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 秒杀本地准入
+ * 售罄标记：lua返回库存不足后重新读取所有桶确认，确认售罄才在本地标记并广播，之后的请求不再访问redis
+ * 令牌桶：每个优惠券每个周期放行 剩余库存 * 系数 / 节点数 个请求，请求量远大于库存时多余的直接拒绝
+ * 令牌桶是每个节点各自的，剩余库存是全局的，按节点数平分后整个集群每个周期放行约 剩余库存 * 系数 个请求
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午11:15
+ */
+@Slf4j
+@Component
+public class SeckillGate implements MessageListener {
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillKeys seckillKeys;
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>(); // 优惠券id -> 标记时间
+    private final Map<Long, TokenBucket> buckets = new ConcurrentHashMap<>();
+    
+    @Value("${dianping.seckill.gate.enabled:true}")
+    private boolean enabled;
+    
+    // 每个周期放行的请求数 = 剩余库存 * 系数 / 节点数
+    @Value("${dianping.seckill.gate.over-admit-factor:2.0}")
+    private double overAdmitFactor;
+    
+    // 集群节点数，令牌按节点平分
+    @Value("${dianping.seckill.gate.nodes:1}")
+    private int nodes;
+    
+    // 每个节点每个周期最少放行的请求数
+    @Value("${dianping.seckill.gate.min-permits:10}")
+    private long minPermits;
+    
+    // 令牌桶刷新周期，每个周期读取一次剩余库存
+    @Value("${dianping.seckill.gate.refill-interval-millis:1000}")
+    private long refillIntervalMillis;
+    
+    // 售罄标记有效期，过期后放行一次请求重新确认，避免补库存后一直拒绝
+    @Value("${dianping.seckill.gate.sold-out-ttl-seconds:600}")
+    private long soldOutTtlSeconds;
+    
+    public SeckillGate(StringRedisTemplate stringRedisTemplate, SeckillKeys seckillKeys) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillKeys = seckillKeys;
+    }
+    
+    /**
+     * 是否已售罄
+     *
+     * @param voucherId 优惠券id
+     * @return 本地已标记售罄且未过期
+     */
+    public boolean isSoldOut(Long voucherId) {
+        if (!enabled) {
+            return false;
+        }
+        Long markedAt = soldOut.get(voucherId);
+        if (markedAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - markedAt > TimeUnit.SECONDS.toMillis(soldOutTtlSeconds)) {
+            soldOut.remove(voucherId, markedAt);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * 标记售罄并通知其他节点
+     *
+     * @param voucherId 优惠券id
+     */
+    public void markSoldOut(Long voucherId) {
+        if (!enabled) {
+            return;
+        }
+        if (soldOut.put(voucherId, System.currentTimeMillis()) == null) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+            log.info("优惠券{}已售罄", voucherId);
+        }
+    }
+    
+    /**
+     * 重新读取所有桶的剩余库存，确认售罄后标记并通知其他节点
+     * 分片时其他请求可能正在借库存，只凭本次请求借不到不能判断售罄；不分片时lua返回库存不足即为售罄
+     *
+     * @param voucherId 优惠券id
+     */
+    public void confirmSoldOut(Long voucherId) {
+        if (!enabled) {
+            return;
+        }
+        if (seckillKeys.sharded()) {
+            try {
+                if (remainingStock(voucherId) != 0) {
+                    return;
+                }
+            } catch (Exception e) {
+                // 确认失败不标记，交给lua判断
+                log.warn("确认优惠券{}售罄失败", voucherId, e);
+                return;
+            }
+        }
+        markSoldOut(voucherId);
+    }
+    
+    /**
+     * 获取准入令牌
+     *
+     * @param voucherId 优惠券id
+     * @return 是否放行
+     */
+    public boolean tryAcquire(Long voucherId) {
+        if (!enabled) {
+            return true;
+        }
+        return buckets.computeIfAbsent(voucherId, TokenBucket::new).tryAcquire();
+    }
+    
+    /**
+     * 收到其他节点的售罄广播
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            Long voucherId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+            soldOut.putIfAbsent(voucherId, System.currentTimeMillis());
+        } catch (NumberFormatException e) {
+            log.warn("无效的售罄广播：{}", new String(message.getBody(), StandardCharsets.UTF_8));
+        }
+    }
+    
+    /**
+     * redis中的剩余库存，所有桶的 stock 和借出中的 transit 之和
+     *
+     * @return 剩余库存，redis中没有库存时返回-1
+     */
+    private long remainingStock(Long voucherId) {
+        // 各个桶的库存字段，一次往返读取
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] stockField = StringRedisSerializer.UTF_8.serialize("stock");
+            byte[] transitField = StringRedisSerializer.UTF_8.serialize("transit");
+            for (int i = 0; i < seckillKeys.shards(); i++) {
+                connection.hashCommands().hMGet(StringRedisSerializer.UTF_8.serialize(seckillKeys.voucherKey(voucherId, i)),
+                        stockField, transitField);
+            }
+            return null;
+        });
+        long stock = -1;
+        for (Object value : values) {
+            List<?> fields = (List<?>) value;
+            if (fields == null || fields.get(0) == null) {
+                continue;
+            }
+            stock = Math.max(stock, 0);
+            for (Object field : fields) {
+                if (field != null) {
+                    stock += Math.max(0, Long.parseLong(field.toString()));
+                }
+            }
+        }
+        return stock;
+    }
+    
+    /**
+     * 单个优惠券的令牌桶，每个周期按剩余库存重新装满
+     */
+    private class TokenBucket {
+        private final Long voucherId;
+        private final AtomicLong tokens = new AtomicLong();
+        private final AtomicLong nextRefillAt = new AtomicLong();
+        
+        TokenBucket(Long voucherId) {
+            this.voucherId = voucherId;
+        }
+        
+        boolean tryAcquire() {
+            long now = System.currentTimeMillis();
+            long refillAt = nextRefillAt.get();
+            // 只有一个线程负责刷新，其余线程继续消耗旧令牌
+            if (now >= refillAt && nextRefillAt.compareAndSet(refillAt, now + refillIntervalMillis)) {
+                refill();
+            }
+            return tokens.getAndDecrement() > 0;
+        }
+        
+        private void refill() {
+            long stock;
+            try {
+                stock = remainingStock(voucherId);
+            } catch (Exception e) {
+                // 读取失败按最少放行，交给lua判断
+                log.warn("读取优惠券{}剩余库存失败", voucherId, e);
+                tokens.set(minPermits);
+                return;
+            }
+            // 这里读到0不标记售罄，售罄只由 confirmSoldOut 确认
+            tokens.set(Math.max(minPermits, (long) Math.ceil(Math.max(stock, 0) * overAdmitFactor / Math.max(1, nodes))));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.zayn.dianping.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.zayn.dianping.utils.RedisConstants.*;
+
+/**
+ * 秒杀相关的redis key
+ * 分片数为1时：seckill:voucher:{voucherId}、seckill:order:{voucherId}、stream:orders
+ * seckill:voucher 为hash，保存库存、开始时间、结束时间、状态，lua一次读取
+ * 分片数为K时，库存预先拆成K个桶，用户按id固定路由到一个桶，一人一单的集合也按桶拆分
+ * 第i个桶的库存、下单用户集合、订单状态和订单消息队列使用同一个hash tag {seckill:i}，redis集群下落在同一个slot，lua可以原子执行
+ * 所有优惠券的第i个桶共用一个slot，K个桶分布到K个slot，单个优惠券的吞吐不再受限于一个redis线程
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午10:30
+ */
+@Component
+public class SeckillKeys {
+    private final int shards;
+    
+    public SeckillKeys(@Value("${dianping.seckill.stock.shards:1}") int shards) {
+        this.shards = Math.max(1, shards);
+    }
+    
+    /**
+     * 分片数
+     *
+     * @return 分片数
+     */
+    public int shards() {
+        return shards;
+    }
+    
+    /**
+     * 是否开启分片
+     *
+     * @return 分片数大于1
+     */
+    public boolean sharded() {
+        return shards > 1;
+    }
+    
+    /**
+     * 用户所属的桶，同一用户固定在一个桶
+     *
+     * @param userId 用户id
+     * @return 桶编号
+     */
+    public int bucketOf(Long userId) {
+        return (int) Math.floorMod(userId, (long) shards);
+    }
+    
+    public String voucherKey(Long voucherId, int bucket) {
+        return sharded() ? SECKILL_VOUCHER_KEY + tag(bucket) + ":" + voucherId : SECKILL_VOUCHER_KEY + voucherId;
+    }
+    
+    public String orderKey(Long voucherId, int bucket) {
+        return sharded() ? SECKILL_ORDER_KEY + tag(bucket) + ":" + voucherId : SECKILL_ORDER_KEY + voucherId;
+    }
+    
+    public String statusKey(Long orderId, int bucket) {
+        return sharded() ? SECKILL_ORDER_STATUS_KEY + tag(bucket) + ":" + orderId : SECKILL_ORDER_STATUS_KEY + orderId;
+    }
+    
+    public String streamKey(int bucket) {
+        return sharded() ? SECKILL_ORDER_STREAM + ":" + tag(bucket) : SECKILL_ORDER_STREAM;
+    }
+    
+    /**
+     * 所有订单消息队列
+     *
+     * @return stream key
+     */
+    public List<String> streamKeys() {
+        List<String> keys = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            keys.add(streamKey(i));
+        }
+        return keys;
+    }
+    
+    /**
+     * 库存平均拆分到各个桶，余数分给前面的桶
+     *
+     * @param stock 总库存
+     * @return 每个桶的库存
+     */
+    public int[] split(int stock) {
+        int[] buckets = new int[shards];
+        for (int i = 0; i < shards; i++) {
+            buckets[i] = stock / shards + (i < stock % shards ? 1 : 0);
+        }
+        return buckets;
+    }
+    
+    private static String tag(int bucket) {
+        return "{seckill:" + bucket + "}";
+    }
+}
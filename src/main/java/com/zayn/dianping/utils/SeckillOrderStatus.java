@@ -0,0 +1,239 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.zayn.dianping.domain.dto.Result;
+import com.zayn.dianping.entity.VoucherOrder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 秒杀订单状态
+ * 每个订单一个hash：status、userId，lua下单时写入 QUEUED，消费者落库后改为 PERSISTED 或 FAILED，TTL后自动删除
+ * 和用户所在桶使用同一个hash tag，lua中和扣库存原子写入
+ * 查询支持长轮询：等待中的请求登记在本地，一个线程定时用一次pipeline检查所有等待的订单，状态确定后立即返回
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:17
+ */
+@Slf4j
+@Component
+public class SeckillOrderStatus {
+    private static final byte[] FIELD_STATUS = StringRedisSerializer.UTF_8.serialize("status");
+    private static final byte[] FIELD_USER_ID = StringRedisSerializer.UTF_8.serialize("userId");
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillKeys seckillKeys;
+    // 等待中的长轮询请求
+    private final Map<DeferredResult<Result>, Waiter> waiters = new ConcurrentHashMap<>();
+    
+    // 订单状态保留时间
+    @Value("${dianping.seckill.order.status-ttl-seconds:600}")
+    private long ttlSeconds;
+    
+    // 长轮询检查间隔
+    @Value("${dianping.seckill.order.status-poll-interval-millis:100}")
+    private long pollIntervalMillis;
+    
+    // 长轮询最长等待时间
+    @Value("${dianping.seckill.order.status-max-wait-millis:30000}")
+    private long maxWaitMillis;
+    
+    private ScheduledExecutorService pollExecutor;
+    
+    public SeckillOrderStatus(StringRedisTemplate stringRedisTemplate, SeckillKeys seckillKeys) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillKeys = seckillKeys;
+    }
+    
+    /**
+     * 订单状态
+     */
+    public enum Status {
+        QUEUED, PERSISTED, FAILED
+    }
+    
+    @PostConstruct
+    private void init() {
+        pollExecutor = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("seckill-status-poll-").build());
+        pollExecutor.scheduleWithFixedDelay(this::pollSafely, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    private void destroy() {
+        pollExecutor.shutdownNow();
+    }
+    
+    /**
+     * 订单状态保留时间，lua下单时使用
+     *
+     * @return 秒
+     */
+    public long ttlSeconds() {
+        return ttlSeconds;
+    }
+    
+    /**
+     * 查询订单状态
+     *
+     * @param orderId 订单id
+     * @param userId  用户id，只能查询自己的订单
+     * @return 订单状态，不存在、已过期或不属于该用户时返回null
+     */
+    public Status get(Long orderId, Long userId) {
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.hashCommands().hMGet(key(orderId, userId), FIELD_STATUS, FIELD_USER_ID));
+        return values == null ? null : parse(values.get(0), values.get(1), userId);
+    }
+    
+    /**
+     * 等待订单状态确定
+     * 当前为 QUEUED 时挂起请求，状态变为 PERSISTED、FAILED 或超时后返回
+     *
+     * @param orderId    订单id
+     * @param userId     用户id
+     * @param waitMillis 最长等待时间，超过 maxWaitMillis 按 maxWaitMillis
+     * @return 订单状态
+     */
+    public DeferredResult<Result> await(Long orderId, Long userId, long waitMillis) {
+        long timeout = Math.min(Math.max(waitMillis, 0), maxWaitMillis);
+        DeferredResult<Result> result = new DeferredResult<>(timeout, () -> ok(orderId, Status.QUEUED));
+        result.onCompletion(() -> waiters.remove(result));
+        waiters.put(result, new Waiter(orderId, userId));
+        return result;
+    }
+    
+    /**
+     * 标记已落库
+     *
+     * @param orders 订单
+     */
+    public void markPersisted(Collection<VoucherOrder> orders) {
+        mark(orders, Status.PERSISTED);
+    }
+    
+    /**
+     * 标记下单失败
+     *
+     * @param order 订单
+     */
+    public void markFailed(VoucherOrder order) {
+        mark(List.of(order), Status.FAILED);
+    }
+    
+    /**
+     * 批量标记下单失败
+     *
+     * @param orders 订单
+     */
+    public void markFailed(Collection<VoucherOrder> orders) {
+        mark(orders, Status.FAILED);
+    }
+    
+    /**
+     * 订单状态查询结果
+     *
+     * @param orderId 订单id
+     * @param status  订单状态
+     * @return 结果
+     */
+    public static Result ok(Long orderId, Status status) {
+        return Result.ok(Map.of("orderId", orderId, "status", status.name()));
+    }
+    
+    /**
+     * 更新订单状态并重置过期时间，一次pipeline
+     * 状态更新失败只影响查询，不影响落库
+     */
+    private void mark(Collection<VoucherOrder> orders, Status status) {
+        byte[] value = StringRedisSerializer.UTF_8.serialize(status.name());
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (VoucherOrder order : orders) {
+                    byte[] key = key(order.getId(), order.getUserId());
+                    connection.hashCommands().hMSet(key, Map.of(
+                            FIELD_STATUS, value,
+                            FIELD_USER_ID, StringRedisSerializer.UTF_8.serialize(order.getUserId().toString())
+                    ));
+                    connection.keyCommands().expire(key, ttlSeconds);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("订单状态更新失败，状态：{}，订单数：{}", status, orders.size(), e);
+        }
+    }
+    
+    private void pollSafely() {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        try {
+            poll();
+        } catch (Exception e) {
+            // 下次再检查，超时的请求按 QUEUED 返回
+            log.warn("订单状态轮询失败", e);
+        }
+    }
+    
+    /**
+     * 一次pipeline读取所有等待中的订单状态，状态确定的立即返回
+     */
+    private void poll() {
+        List<Map.Entry<DeferredResult<Result>, Waiter>> pending = new ArrayList<>(waiters.entrySet());
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<DeferredResult<Result>, Waiter> entry : pending) {
+                Waiter waiter = entry.getValue();
+                connection.hashCommands().hMGet(key(waiter.orderId(), waiter.userId()), FIELD_STATUS, FIELD_USER_ID);
+            }
+            return null;
+        });
+        for (int i = 0; i < pending.size(); i++) {
+            DeferredResult<Result> result = pending.get(i).getKey();
+            Waiter waiter = pending.get(i).getValue();
+            List<?> fields = (List<?>) values.get(i);
+            Status status = parse(fields.get(0), fields.get(1), waiter.userId());
+            if (status == null) {
+                result.setResult(Result.fail("订单不存在或状态已过期"));
+            } else if (status != Status.QUEUED) {
+                result.setResult(ok(waiter.orderId(), status));
+            }
+        }
+    }
+    
+    private byte[] key(Long orderId, Long userId) {
+        return StringRedisSerializer.UTF_8.serialize(seckillKeys.statusKey(orderId, seckillKeys.bucketOf(userId)));
+    }
+    
+    private static Status parse(Object status, Object owner, Long userId) {
+        if (status == null || owner == null || !userId.toString().equals(text(owner))) {
+            return null;
+        }
+        try {
+            return Status.valueOf(text(status));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private static String text(Object value) {
+        return value instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : value.toString();
+    }
+    
+    private record Waiter(Long orderId, Long userId) {
+    }
+}
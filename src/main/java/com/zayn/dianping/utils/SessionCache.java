@@ -0,0 +1,304 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.zayn.dianping.domain.dto.UserDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.zayn.dianping.utils.RedisConstants.*;
+
+/**
+ * 登录会话的进程内缓存
+ * 按token缓存已解析的UserDTO，命中时不访问redis；本地过期时间很短，失效广播丢失时也只会延迟这么久
+ * 登出、封禁时通过redis发布订阅广播失效消息，各节点删除本地会话
+ * 会话续期改为惰性：记录redis中会话的预计过期时间，剩余时间低于阈值才续期，续期请求攒批后由后台线程一次pipeline发出
+ * 每个用户一个会话索引（set，成员为token），和会话一起写入、续期，用于一次撤销用户的全部会话
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:28
+ */
+@Slf4j
+@Component
+public class SessionCache implements MessageListener {
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final LRUCache<String, Session> cache;
+    // 失效版本号，每次失效加一，用于丢弃失效期间从redis读到的旧会话
+    private final AtomicLong version = new AtomicLong();
+    // 待续期的token -> 用户id
+    private final Map<String, Long> pendingRefresh = new ConcurrentHashMap<>();
+    private final long sessionTtlMillis = TimeUnit.SECONDS.toMillis(LOGIN_USER_TTL);
+    private final long refreshThresholdMillis;
+    private final long refreshIntervalMillis;
+    
+    private ScheduledExecutorService refreshExecutor;
+    
+    public SessionCache(StringRedisTemplate stringRedisTemplate,
+                        @Value("${dianping.session.local.enabled:true}") boolean enabled,
+                        @Value("${dianping.session.local.max-size:10000}") int maxSize,
+                        @Value("${dianping.session.local.ttl-seconds:30}") long ttlSeconds,
+                        @Value("${dianping.session.refresh-threshold-ratio:0.5}") double refreshThresholdRatio,
+                        @Value("${dianping.session.refresh-interval-millis:1000}") long refreshIntervalMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+        this.cache = CacheUtil.newLRUCache(maxSize, TimeUnit.SECONDS.toMillis(ttlSeconds));
+        this.refreshThresholdMillis = (long) (sessionTtlMillis * refreshThresholdRatio);
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+    
+    @PostConstruct
+    private void init() {
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("session-refresh-").setDaemon(true).build());
+        refreshExecutor.scheduleWithFixedDelay(this::refreshSafely, refreshIntervalMillis, refreshIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    private void destroy() {
+        refreshExecutor.shutdownNow();
+        // 停机前把攒下的续期发出去
+        refreshSafely();
+    }
+    
+    /**
+     * 根据token获取登录用户
+     * 先查本地，未命中读redis（HGETALL和PTTL一次pipeline），需要续期时登记到待续期集合
+     *
+     * @param token 登录token
+     * @return 登录用户，未登录或会话已过期返回null
+     */
+    public UserDTO get(String token) {
+        long now = System.currentTimeMillis();
+        if (enabled) {
+            // 不刷新访问时间，保证本地过期时间是写入后的绝对时间
+            Session session = cache.get(token, false);
+            if (session != null && session.expiresAt > now) {
+                scheduleRefresh(token, session, now);
+                return session.user;
+            }
+        }
+        long readVersion = version.get();
+        Session session = load(token, now);
+        if (session == null) {
+            return null;
+        }
+        if (enabled && version.get() == readVersion) {
+            cache.put(token, session);
+        }
+        scheduleRefresh(token, session, now);
+        return session.user;
+    }
+    
+    /**
+     * 保存会话，HSET、EXPIRE和写入会话索引一次pipeline，同时写入本地
+     * hash字段和UserDTO字段一致，值为字符串，空值不写入
+     *
+     * @param token 登录token
+     * @param user  登录用户
+     */
+    public void save(String token, UserDTO user) {
+        Map<byte[], byte[]> fields = new HashMap<>();
+        BeanUtil.beanToMap(user).forEach((field, value) -> {
+            if (value != null) {
+                fields.put(StringRedisSerializer.UTF_8.serialize(field),
+                        StringRedisSerializer.UTF_8.serialize(value.toString()));
+            }
+        });
+        byte[] key = key(token);
+        byte[] indexKey = indexKey(user.getId());
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hMSet(key, fields);
+            connection.keyCommands().expire(key, LOGIN_USER_TTL);
+            connection.setCommands().sAdd(indexKey, StringRedisSerializer.UTF_8.serialize(token));
+            connection.keyCommands().expire(indexKey, LOGIN_USER_TTL);
+            return null;
+        });
+        if (enabled) {
+            cache.put(token, new Session(user, System.currentTimeMillis() + sessionTtlMillis));
+        }
+    }
+    
+    /**
+     * 删除会话，并从会话索引中移除
+     *
+     * @param token  登录token
+     * @param userId 用户id
+     */
+    public void remove(String token, Long userId) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.keyCommands().del(key(token));
+            connection.setCommands().sRem(indexKey(userId), StringRedisSerializer.UTF_8.serialize(token));
+            return null;
+        });
+        invalidate(token);
+    }
+    
+    /**
+     * 删除用户的全部会话，修改密码、封禁时调用
+     *
+     * @param userId 用户id
+     * @return 删除的会话数
+     */
+    public int removeAll(Long userId) {
+        byte[] indexKey = indexKey(userId);
+        Set<String> tokens = stringRedisTemplate.opsForSet().members(LOGIN_USER_INDEX_KEY + userId);
+        if (tokens == null || tokens.isEmpty()) {
+            return 0;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String token : tokens) {
+                connection.keyCommands().del(key(token));
+            }
+            connection.keyCommands().del(indexKey);
+            return null;
+        });
+        tokens.forEach(this::invalidate);
+        return tokens.size();
+    }
+    
+    /**
+     * 失效本节点会话并广播给其他节点，登出、封禁时调用
+     *
+     * @param token 登录token
+     */
+    public void invalidate(String token) {
+        evict(token);
+        stringRedisTemplate.convertAndSend(SESSION_INVALIDATE_CHANNEL, token);
+    }
+    
+    /**
+     * 只失效本节点会话
+     *
+     * @param token 登录token
+     */
+    public void evict(String token) {
+        version.incrementAndGet();
+        cache.remove(token);
+        pendingRefresh.remove(token);
+    }
+    
+    /**
+     * 收到其他节点（也包括自己）的失效广播
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String token = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到会话失效广播：{}", token);
+        evict(token);
+    }
+    
+    private Session load(String token, long now) {
+        byte[] key = key(token);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hGetAll(key);
+            connection.keyCommands().pTtl(key);
+            return null;
+        });
+        Map<?, ?> entries = (Map<?, ?>) results.get(0);
+        if (entries == null || entries.isEmpty()) {
+            return null;
+        }
+        // 没有过期时间（-1）按已到期处理，下次续期时补上
+        Long ttl = (Long) results.get(1);
+        long remaining = ttl == null || ttl < 0 ? 0 : ttl;
+        UserDTO user = BeanUtil.fillBeanWithMap(entries, new UserDTO(), false);
+        return new Session(user, now + remaining);
+    }
+    
+    private void scheduleRefresh(String token, Session session, long now) {
+        if (session.expiresAt - now < refreshThresholdMillis) {
+            pendingRefresh.put(token, session.user.getId());
+        }
+    }
+    
+    private void refreshSafely() {
+        if (pendingRefresh.isEmpty()) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (Exception e) {
+            // 剩余时间仍低于阈值，下次访问会重新登记
+            log.warn("会话续期失败", e);
+        }
+    }
+    
+    /**
+     * 一次pipeline续期所有待续期的会话和所属用户的会话索引，续期成功的更新本地预计过期时间，key已不存在的删除本地会话
+     */
+    private void refresh() {
+        Map<String, Long> pending = new HashMap<>(pendingRefresh);
+        pending.forEach(pendingRefresh::remove);
+        List<String> tokens = new ArrayList<>(pending.keySet());
+        Set<Long> userIds = new HashSet<>(pending.values());
+        long expiresAt = System.currentTimeMillis() + sessionTtlMillis;
+        // 前 tokens.size() 个结果为会话续期结果
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String token : tokens) {
+                connection.keyCommands().expire(key(token), LOGIN_USER_TTL);
+            }
+            for (Long userId : userIds) {
+                connection.keyCommands().expire(indexKey(userId), LOGIN_USER_TTL);
+            }
+            return null;
+        });
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (Boolean.TRUE.equals(results.get(i))) {
+                Session session = cache.get(token, false);
+                if (session != null) {
+                    session.expiresAt = expiresAt;
+                }
+            } else {
+                cache.remove(token);
+            }
+        }
+        log.debug("会话续期{}个", tokens.size());
+    }
+    
+    private static byte[] key(String token) {
+        return StringRedisSerializer.UTF_8.serialize(LOGIN_USER_KEY + token);
+    }
+    
+    private static byte[] indexKey(Long userId) {
+        return StringRedisSerializer.UTF_8.serialize(LOGIN_USER_INDEX_KEY + userId);
+    }
+    
+    /**
+     * 本地会话，expiresAt 为redis中会话的预计过期时间
+     */
+    private static final class Session {
+        private final UserDTO user;
+        private volatile long expiresAt;
+        
+        private Session(UserDTO user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
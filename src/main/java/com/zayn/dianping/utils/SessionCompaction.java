@@ -0,0 +1,222 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import static com.zayn.dianping.utils.RedisConstants.*;
+
+/**
+ * 登录会话整理
+ * 定时用 SCAN 分批遍历 login:token:*（不用KEYS，不阻塞redis），每批一次pipeline检查、一次pipeline修正：
+ * 没有用户信息的会话删除；没有过期时间或过期时间超过会话有效期的（旧版本写入）改为会话有效期
+ * 再遍历 login:user:* 会话索引，移除已不存在的token
+ * 多个节点每个周期只有一个执行，批之间暂停一段时间，控制对redis的压力
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:38
+ */
+@Slf4j
+@Component
+public class SessionCompaction {
+    private static final byte[] FIELD_ID = StringRedisSerializer.UTF_8.serialize("id");
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long sessionTtlMillis = TimeUnit.SECONDS.toMillis(LOGIN_USER_TTL);
+    
+    @Value("${dianping.session.compaction.enabled:true}")
+    private boolean enabled;
+    
+    // 执行周期
+    @Value("${dianping.session.compaction.interval-minutes:60}")
+    private long intervalMinutes;
+    
+    // 每批处理的key数，也是SCAN的COUNT
+    @Value("${dianping.session.compaction.batch-size:500}")
+    private int batchSize;
+    
+    // 批之间的暂停时间
+    @Value("${dianping.session.compaction.pause-millis:20}")
+    private long pauseMillis;
+    
+    private ScheduledExecutorService executor;
+    
+    public SessionCompaction(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+    
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("session-compaction-").setDaemon(true).build());
+        executor.scheduleWithFixedDelay(this::compactSafely, 1, intervalMinutes, TimeUnit.MINUTES);
+    }
+    
+    @PreDestroy
+    private void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+    
+    private void compactSafely() {
+        try {
+            // 本周期已由其他节点执行
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                                                  .setIfAbsent(LOCK_SESSION_COMPACTION_KEY, "1", Duration.ofMinutes(intervalMinutes));
+            if (!Boolean.TRUE.equals(acquired)) {
+                return;
+            }
+            long begin = System.currentTimeMillis();
+            int sessions = scan(LOGIN_USER_KEY, this::compactSessions);
+            int indexes = scan(LOGIN_USER_INDEX_KEY, this::compactIndexes);
+            log.info("会话整理完成，修正会话{}个，移除索引中的失效token{}个，耗时{}ms",
+                    sessions, indexes, System.currentTimeMillis() - begin);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("会话整理失败", e);
+        }
+    }
+    
+    /**
+     * SCAN 遍历前缀下的key，分批处理
+     *
+     * @param prefix    key前缀
+     * @param processor 批处理，返回修正的数量
+     * @return 修正的总数
+     */
+    private int scan(String prefix, ToIntFunction<List<String>> processor) throws InterruptedException {
+        ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(batchSize).build();
+        int fixed = 0;
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            List<String> batch = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= batchSize) {
+                    fixed += processor.applyAsInt(batch);
+                    batch.clear();
+                    Thread.sleep(pauseMillis);
+                }
+            }
+            if (!batch.isEmpty()) {
+                fixed += processor.applyAsInt(batch);
+            }
+        }
+        return fixed;
+    }
+    
+    /**
+     * 一次pipeline读取 PTTL 和是否有用户id，再一次pipeline删除或修正过期时间
+     */
+    private int compactSessions(List<String> keys) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                byte[] rawKey = StringRedisSerializer.UTF_8.serialize(key);
+                connection.keyCommands().pTtl(rawKey);
+                connection.hashCommands().hExists(rawKey, FIELD_ID);
+            }
+            return null;
+        });
+        List<String> orphaned = new ArrayList<>();
+        List<String> unbounded = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Long ttl = (Long) results.get(2 * i);
+            Boolean hasUser = (Boolean) results.get(2 * i + 1);
+            if (ttl == null || ttl == -2) {
+                // 已过期
+                continue;
+            }
+            if (!Boolean.TRUE.equals(hasUser)) {
+                orphaned.add(keys.get(i));
+            } else if (ttl == -1 || ttl > sessionTtlMillis) {
+                unbounded.add(keys.get(i));
+            }
+        }
+        if (orphaned.isEmpty() && unbounded.isEmpty()) {
+            return 0;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : orphaned) {
+                connection.keyCommands().del(StringRedisSerializer.UTF_8.serialize(key));
+            }
+            for (String key : unbounded) {
+                connection.keyCommands().expire(StringRedisSerializer.UTF_8.serialize(key), LOGIN_USER_TTL);
+            }
+            return null;
+        });
+        return orphaned.size() + unbounded.size();
+    }
+    
+    /**
+     * 一次pipeline读取索引成员，一次pipeline检查token是否存在，一次pipeline移除不存在的token
+     * 成员全部移除后索引key自动删除
+     */
+    @SuppressWarnings("unchecked")
+    private int compactIndexes(List<String> indexKeys) {
+        List<Object> members = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String indexKey : indexKeys) {
+                connection.setCommands().sMembers(StringRedisSerializer.UTF_8.serialize(indexKey));
+            }
+            return null;
+        });
+        List<String> owners = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < indexKeys.size(); i++) {
+            Set<String> indexTokens = (Set<String>) members.get(i);
+            if (indexTokens == null) {
+                continue;
+            }
+            for (String token : indexTokens) {
+                owners.add(indexKeys.get(i));
+                tokens.add(token);
+            }
+        }
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        List<Object> exists = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String token : tokens) {
+                connection.keyCommands().exists(StringRedisSerializer.UTF_8.serialize(LOGIN_USER_KEY + token));
+            }
+            return null;
+        });
+        List<Integer> dead = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!Boolean.TRUE.equals(exists.get(i))) {
+                dead.add(i);
+            }
+        }
+        if (dead.isEmpty()) {
+            return 0;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i : dead) {
+                connection.setCommands().sRem(StringRedisSerializer.UTF_8.serialize(owners.get(i)),
+                        StringRedisSerializer.UTF_8.serialize(tokens.get(i)));
+            }
+            return null;
+        });
+        return dead.size();
+    }
+}
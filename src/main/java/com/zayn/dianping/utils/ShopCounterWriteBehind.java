@@ -0,0 +1,276 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.zayn.dianping.entity.Shop;
+import com.zayn.dianping.mapper.ShopMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.zayn.dianping.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.zayn.dianping.utils.RedisConstants.SHOP_COUNTER_STREAM;
+
+/**
+ * 商铺计数字段（销量、评论数、评分）异步写回
+ * 更新先写入redis stream，定时按商铺合并后一条 UPDATE ... CASE 批量写库，再删除一次缓存
+ * 集群内同一时间只有一个节点在写回，共用同一个消费者，未确认的消息下次优先重放，宕机不丢数据
+ * 每次持有锁只写回一批，锁的时间远大于一批的耗时，避免锁过期后其他节点读到同一批pending消息重复写库
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午7:20
+ */
+@Slf4j
+@Component
+public class ShopCounterWriteBehind {
+    private static final String GROUP = "g1";
+    private static final String CONSUMER = "flusher"; // 所有节点共用，宕机后未确认的消息由任意节点重放
+    private static final long LOCK_SECONDS = 30L;
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_SOLD = "sold";
+    private static final String FIELD_COMMENTS = "comments";
+    private static final String FIELD_SCORE = "score";
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ShopMapper shopMapper;
+    private final CacheClient cacheClient;
+    private final ILock flushLock;
+    
+    @Value("${dianping.shop.write-behind.enabled:false}")
+    private boolean enabled;
+    
+    // 写回间隔
+    @Value("${dianping.shop.write-behind.flush-interval-ms:1000}")
+    private long flushIntervalMillis;
+    
+    // 每批最多读取的消息数
+    @Value("${dianping.shop.write-behind.batch-size:500}")
+    private int batchSize;
+    
+    private ScheduledExecutorService flushExecutor;
+    
+    public ShopCounterWriteBehind(StringRedisTemplate stringRedisTemplate, ShopMapper shopMapper, CacheClient cacheClient) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.shopMapper = shopMapper;
+        this.cacheClient = cacheClient;
+        this.flushLock = new SimpleRedisLock(stringRedisTemplate, "shop:counter:flush");
+    }
+    
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForStream().createGroup(SHOP_COUNTER_STREAM, ReadOffset.from("0"), GROUP);
+        } catch (RedisSystemException e) {
+            // 消费组已存在
+            log.debug("消费组已存在：{}", SHOP_COUNTER_STREAM);
+        }
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("shop-counter-flush-").build());
+        flushExecutor.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    private void destroy() {
+        if (flushExecutor == null) {
+            return;
+        }
+        flushExecutor.shutdown();
+        try {
+            if (flushExecutor.awaitTermination(LOCK_SECONDS, TimeUnit.SECONDS)) {
+                // 停机前最后写回一次，没写完的下次启动重放
+                flushSafely();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 是否开启异步写回
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * 是否包含计数字段
+     *
+     * @param shop 商铺
+     * @return 是否包含
+     */
+    public static boolean hasCounters(Shop shop) {
+        return shop.getSold() != null || shop.getComments() != null || shop.getScore() != null;
+    }
+    
+    /**
+     * 是否包含计数字段以外的数据库字段，新增字段时需要同步修改
+     *
+     * @param shop 商铺
+     * @return 是否包含
+     */
+    public static boolean hasOtherColumns(Shop shop) {
+        return shop.getName() != null || shop.getTypeId() != null || shop.getImages() != null
+                || shop.getArea() != null || shop.getAddress() != null || shop.getX() != null || shop.getY() != null
+                || shop.getAvgPrice() != null || shop.getOpenHours() != null
+                || shop.getCreateTime() != null || shop.getUpdateTime() != null;
+    }
+    
+    /**
+     * 提交计数字段更新，写入stream后立即返回
+     *
+     * @param shop 商铺id和计数字段，为null的字段不更新
+     */
+    public void submit(Shop shop) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(FIELD_ID, shop.getId().toString());
+        if (shop.getSold() != null) {
+            fields.put(FIELD_SOLD, shop.getSold().toString());
+        }
+        if (shop.getComments() != null) {
+            fields.put(FIELD_COMMENTS, shop.getComments().toString());
+        }
+        if (shop.getScore() != null) {
+            fields.put(FIELD_SCORE, shop.getScore().toString());
+        }
+        stringRedisTemplate.opsForStream().add(SHOP_COUNTER_STREAM, fields);
+    }
+    
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            // 未确认的消息留在pending列表，下次重放
+            log.error("商铺计数写回失败", e);
+        }
+    }
+    
+    /**
+     * 写回数据库，直到读空
+     */
+    private void flush() {
+        while (flushOnce() >= batchSize) {
+            // 读满一批说明可能还有积压，重新加锁继续
+        }
+    }
+    
+    /**
+     * 加锁写回一批
+     * 先处理未确认的消息（上次失败或宕机），没有再读取新消息
+     *
+     * @return 本批消息数，未拿到锁返回0
+     */
+    private int flushOnce() {
+        if (!flushLock.lock(LOCK_SECONDS)) {
+            // 其他节点在写回
+            return 0;
+        }
+        try {
+            List<MapRecord<String, Object, Object>> records = read(ReadOffset.from("0"));
+            if (records == null || records.isEmpty()) {
+                records = read(ReadOffset.lastConsumed());
+            }
+            if (records == null || records.isEmpty()) {
+                return 0;
+            }
+            write(records);
+            return records.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    @SuppressWarnings("unchecked") // StreamOffset可变参数
+    private List<MapRecord<String, Object, Object>> read(ReadOffset offset) {
+        return stringRedisTemplate.opsForStream().read(
+                Consumer.from(GROUP, CONSUMER),
+                StreamReadOptions.empty().count(batchSize),
+                StreamOffset.create(SHOP_COUNTER_STREAM, offset)
+        );
+    }
+    
+    /**
+     * 按商铺合并，同一字段后写覆盖先写，一条SQL写库后确认并删除消息
+     * 无法解析的消息记录日志后和其他消息一起确认删除，否则每次都从pending列表读到它，后续消息永远无法写回
+     *
+     * @param records stream消息，按写入顺序
+     */
+    private void write(List<MapRecord<String, Object, Object>> records) {
+        Map<Long, Shop> merged = new LinkedHashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            Shop update;
+            try {
+                update = parse(record.getValue());
+            } catch (NumberFormatException e) {
+                update = null;
+            }
+            if (update == null) {
+                log.warn("忽略无效的商铺计数消息：{} {}", record.getId(), record.getValue());
+                continue;
+            }
+            Shop shop = merged.computeIfAbsent(update.getId(), k -> new Shop().setId(k));
+            if (update.getSold() != null) {
+                shop.setSold(update.getSold());
+            }
+            if (update.getComments() != null) {
+                shop.setComments(update.getComments());
+            }
+            if (update.getScore() != null) {
+                shop.setScore(update.getScore());
+            }
+        }
+        
+        if (!merged.isEmpty()) {
+            shopMapper.updateCountersBatch(new ArrayList<>(merged.values()));
+        }
+        
+        RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+        stringRedisTemplate.opsForStream().acknowledge(SHOP_COUNTER_STREAM, GROUP, ids);
+        stringRedisTemplate.opsForStream().delete(SHOP_COUNTER_STREAM, ids);
+        
+        // 每个商铺每批只删除一次缓存
+        merged.keySet().forEach(id -> cacheClient.del(CACHE_SHOP_KEY + id));
+        log.debug("商铺计数写回{}条消息，合并为{}个商铺", records.size(), merged.size());
+    }
+    
+    /**
+     * 解析一条消息
+     *
+     * @param value 消息内容
+     * @return 商铺id和计数字段，没有id返回null
+     * @throws NumberFormatException 字段不是数字
+     */
+    private static Shop parse(Map<Object, Object> value) {
+        Object id = value.get(FIELD_ID);
+        if (id == null) {
+            return null;
+        }
+        Shop shop = new Shop().setId(Long.valueOf(id.toString()));
+        Object sold = value.get(FIELD_SOLD);
+        if (sold != null) {
+            shop.setSold(Integer.valueOf(sold.toString()));
+        }
+        Object comments = value.get(FIELD_COMMENTS);
+        if (comments != null) {
+            shop.setComments(Integer.valueOf(comments.toString()));
+        }
+        Object score = value.get(FIELD_SCORE);
+        if (score != null) {
+            shop.setScore(Integer.valueOf(score.toString()));
+        }
+        return shop;
+    }
+}
@@ -0,0 +1,188 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.core.lang.TypeReference;
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.zayn.dianping.entity.ShopType;
+import com.zayn.dianping.mapper.ShopTypeMapper;
+import com.zayn.dianping.utils.codec.CacheCodecs;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.zayn.dianping.utils.CacheMetrics.Event.*;
+import static com.zayn.dianping.utils.RedisConstants.SHOP_TYPE_LIST_KEY;
+import static com.zayn.dianping.utils.RedisConstants.SHOP_TYPE_REFRESH_CHANNEL;
+
+/**
+ * 商铺类型快照
+ * 商铺类型几乎不变，整个列表常驻内存，读取不访问redis
+ * redis中整份列表存为一个key，一条SET整体替换；替换后广播，各节点从redis重新加载
+ * 版本号为列表内容的摘要，各节点一致，用作ETag
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午8:10
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ShopTypeCache implements MessageListener {
+    private static final Type SHOP_TYPE_LIST_TYPE = new TypeReference<List<ShopType>>() {
+    }.getType();
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ShopTypeMapper shopTypeMapper;
+    private final CacheCodecs codecs;
+    private final CacheMetrics cacheMetrics;
+    // 加载期间有redis和数据库IO，不用synchronized，避免虚拟线程pinning
+    private final ReentrantLock loadLock = new ReentrantLock();
+    
+    private volatile Snapshot snapshot;
+    
+    /**
+     * 商铺类型快照
+     *
+     * @param types   按sort升序，不可修改
+     * @param version 内容摘要
+     */
+    public record Snapshot(List<ShopType> types, String version) {
+    }
+    
+    /**
+     * 当前快照，首次访问时加载
+     * 内存快照命中记为一级缓存命中
+     *
+     * @return 快照
+     */
+    public Snapshot get() {
+        Snapshot s = snapshot;
+        if (s != null) {
+            cacheMetrics.record(SHOP_TYPE_LIST_KEY, LOCAL_HIT);
+            return s;
+        }
+        return load();
+    }
+    
+    /**
+     * 加载快照，优先从redis读取，redis中没有再查库写入
+     * 启动时调用，避免所有节点同时查库
+     *
+     * @return 快照
+     */
+    public Snapshot load() {
+        loadLock.lock();
+        try {
+            if (snapshot != null) {
+                return snapshot;
+            }
+            List<ShopType> types = readRedis();
+            if (types == null) {
+                cacheMetrics.record(SHOP_TYPE_LIST_KEY, MISS);
+                types = loadFromDb();
+                writeRedis(types);
+            } else {
+                cacheMetrics.record(SHOP_TYPE_LIST_KEY, HIT);
+            }
+            snapshot = newSnapshot(types);
+            log.info("商铺类型加载完成，共{}条，版本{}", types.size(), snapshot.version());
+            return snapshot;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+    
+    /**
+     * 商铺类型变更后调用，从数据库重新加载，整体替换redis中的列表并通知其他节点
+     *
+     * @return 新快照
+     */
+    public Snapshot refresh() {
+        loadLock.lock();
+        try {
+            List<ShopType> types = loadFromDb();
+            writeRedis(types);
+            snapshot = newSnapshot(types);
+            stringRedisTemplate.convertAndSend(SHOP_TYPE_REFRESH_CHANNEL, snapshot.version());
+            log.info("商铺类型已刷新，共{}条，版本{}", types.size(), snapshot.version());
+            return snapshot;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+    
+    /**
+     * 收到刷新广播，从redis重新加载
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String version = new String(message.getBody());
+        Snapshot current = snapshot;
+        if (current != null && current.version().equals(version)) {
+            // 自己发出的或已是最新
+            return;
+        }
+        try {
+            reload();
+        } catch (Exception e) {
+            // 保留旧快照，下次广播或重启时再加载
+            log.error("商铺类型重新加载失败", e);
+        }
+    }
+    
+    private void reload() {
+        loadLock.lock();
+        try {
+            List<ShopType> types = readRedis();
+            if (types != null) {
+                snapshot = newSnapshot(types);
+                log.info("商铺类型已重新加载，版本{}", snapshot.version());
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+    
+    private List<ShopType> readRedis() {
+        byte[] raw = stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(StringRedisSerializer.UTF_8.serialize(SHOP_TYPE_LIST_KEY)));
+        if (raw == null || raw.length == 0) {
+            return null;
+        }
+        try {
+            return codecs.decode(raw, SHOP_TYPE_LIST_TYPE);
+        } catch (Exception e) {
+            log.warn("商铺类型解码失败，重新查库", e);
+            return null;
+        }
+    }
+    
+    private void writeRedis(List<ShopType> types) {
+        byte[] value = codecs.encode(types);
+        cacheMetrics.recordPayload(SHOP_TYPE_LIST_KEY, value.length);
+        // 整个列表一个key，一条命令整体替换，不存在中间状态
+        stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.stringCommands().set(StringRedisSerializer.UTF_8.serialize(SHOP_TYPE_LIST_KEY), value));
+    }
+    
+    private List<ShopType> loadFromDb() {
+        long start = System.nanoTime();
+        List<ShopType> types = shopTypeMapper.selectList(new QueryWrapper<ShopType>().orderByAsc("sort"));
+        cacheMetrics.recordRebuild(SHOP_TYPE_LIST_KEY, System.nanoTime() - start);
+        return types;
+    }
+    
+    private static Snapshot newSnapshot(List<ShopType> types) {
+        List<ShopType> copy = List.copyOf(types);
+        return new Snapshot(copy, DigestUtil.md5Hex(JSONUtil.toJsonStr(copy)));
+    }
+}
@@ -0,0 +1,213 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import com.zayn.dianping.domain.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * 无状态登录token
+ * dianping.session.mode=stateless 时使用，token = base64url(载荷).base64url(HMAC-SHA256签名)
+ * 载荷为紧凑的二进制：版本、token id、签发时间、过期时间、UserDTO字段，校验只做一次HMAC，不访问redis
+ * 登出的token记录在 TokenRevocations 中，只有本地布隆过滤器命中时才查redis；撤销用户全部token只查本地
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:31
+ */
+@Slf4j
+@Component
+public class SignedTokens {
+    public static final String MODE = "stateless";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_BYTES = 32;
+    private static final byte VERSION = 2;
+    
+    private final TokenRevocations revocations;
+    private final boolean enabled;
+    private final long ttlSeconds;
+    private final Mac prototype; // Mac不是线程安全的，每次使用时clone
+    
+    public SignedTokens(TokenRevocations revocations,
+                        @Value("${dianping.session.mode:redis}") String mode,
+                        @Value("${dianping.session.stateless.secret:}") String secret,
+                        @Value("${dianping.session.stateless.ttl-seconds:36000}") long ttlSeconds) {
+        this.revocations = revocations;
+        this.enabled = MODE.equals(mode);
+        this.ttlSeconds = ttlSeconds;
+        this.prototype = enabled ? newMac(secret) : null;
+        if (enabled) {
+            log.info("登录token使用无状态签名模式，有效期{}秒", ttlSeconds);
+        }
+    }
+    
+    /**
+     * 是否为无状态模式
+     *
+     * @return true 使用签名token；false 使用redis hash会话
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+    
+    /**
+     * 签发token
+     *
+     * @param user 登录用户
+     * @return token
+     */
+    public String issue(UserDTO user) {
+        long tokenId = RandomUtil.getSecureRandom().nextLong();
+        long issuedAt = System.currentTimeMillis();
+        long expiresAt = issuedAt / 1000 + ttlSeconds;
+        byte[] payload = encode(new Claims(tokenId, issuedAt, expiresAt, user));
+        return Base64.encodeUrlSafe(payload) + "." + Base64.encodeUrlSafe(sign(payload));
+    }
+    
+    /**
+     * 校验token
+     *
+     * @param token token
+     * @return 登录用户，签名错误、已过期或已登出返回null
+     */
+    public UserDTO verify(String token) {
+        Claims claims = parse(token);
+        if (claims == null || revocations.isRevoked(claims.tokenId(), claims.user().getId(), claims.issuedAt())) {
+            return null;
+        }
+        return claims.user();
+    }
+    
+    /**
+     * 登出，token在过期之前记录为已撤销
+     *
+     * @param token token
+     */
+    public void revoke(String token) {
+        Claims claims = parse(token);
+        if (claims != null) {
+            revocations.revoke(claims.tokenId(), claims.expiresAt());
+        }
+    }
+    
+    /**
+     * 撤销用户已签发的全部token，按毫秒比较签发时间，之后签发的不受影响
+     *
+     * @param userId 用户id
+     */
+    public void revokeAll(Long userId) {
+        revocations.revokeUser(userId, System.currentTimeMillis());
+    }
+    
+    /**
+     * 校验签名和过期时间
+     *
+     * @return 载荷，校验失败返回null
+     */
+    private Claims parse(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot == token.length() - 1) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = Base64.decode(token.substring(0, dot));
+            signature = Base64.decode(token.substring(dot + 1));
+        } catch (Exception e) {
+            return null;
+        }
+        // 常量时间比较
+        if (!MessageDigest.isEqual(sign(payload), signature)) {
+            return null;
+        }
+        Claims claims = decode(payload);
+        if (claims == null || claims.expiresAt() <= System.currentTimeMillis() / 1000) {
+            return null;
+        }
+        return claims;
+    }
+    
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = (Mac) prototype.clone();
+            return mac.doFinal(payload);
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("HMAC不支持clone", e);
+        }
+    }
+    
+    private static Mac newMac(String secret) {
+        if (StrUtil.isBlank(secret) || secret.getBytes(StandardCharsets.UTF_8).length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("无状态token需要配置 dianping.session.stateless.secret，至少" + MIN_SECRET_BYTES + "字节");
+        }
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC初始化失败", e);
+        }
+    }
+    
+    private static byte[] encode(Claims claims) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            UserDTO user = claims.user();
+            out.writeByte(VERSION);
+            out.writeLong(claims.tokenId());
+            out.writeLong(claims.issuedAt());
+            out.writeLong(claims.expiresAt());
+            out.writeLong(user.getId());
+            writeNullable(out, user.getNickName());
+            writeNullable(out, user.getIcon());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static Claims decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (in.readByte() != VERSION) {
+                return null;
+            }
+            long tokenId = in.readLong();
+            long issuedAt = in.readLong();
+            long expiresAt = in.readLong();
+            UserDTO user = new UserDTO();
+            user.setId(in.readLong());
+            user.setNickName(readNullable(in));
+            user.setIcon(readNullable(in));
+            return new Claims(tokenId, issuedAt, expiresAt, user);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    /**
+     * token载荷，issuedAt 为签发时间（毫秒），expiresAt 为过期时间（秒）
+     */
+    private record Claims(long tokenId, long issuedAt, long expiresAt, UserDTO user) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.zayn.dianping.utils;
+
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并
+ * 同一个key同时只有一个线程执行加载，其余线程等待同一个结果
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午11:40
+ */
+public class SingleFlight {
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+    
+    /**
+     * 执行加载，相同key的并发调用共享结果
+     *
+     * @param key           合并key
+     * @param loader        加载函数
+     * @param timeoutMillis 等待其他线程结果的超时时间
+     * @param <R>           返回类型
+     * @return 加载结果
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R execute(String key, Supplier<R> loader, long timeoutMillis) {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = calls.putIfAbsent(key, call);
+        
+        // 已有线程在加载，等待结果
+        if (inFlight != null) {
+            return (R) await(key, inFlight, timeoutMillis);
+        }
+        
+        // 当前线程负责加载
+        try {
+            R r = loader.get();
+            call.complete(r);
+            return r;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+    
+    private Object await(String key, CompletableFuture<Object> call, long timeoutMillis) {
+        try {
+            return call.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待加载被中断：" + key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("加载失败：" + key, e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("等待加载超时：" + key, e);
+        }
+    }
+}
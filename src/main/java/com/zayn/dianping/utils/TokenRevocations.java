@@ -0,0 +1,223 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.zayn.dianping.utils.RedisConstants.SESSION_REVOKED_CHANNEL;
+import static com.zayn.dianping.utils.RedisConstants.SESSION_REVOKED_KEY;
+import static com.zayn.dianping.utils.RedisConstants.SESSION_REVOKED_USER_KEY;
+
+/**
+ * 已登出的无状态token
+ * 单个token：redis zset 为准，member 为 token id，score 为token过期时间（秒），过期后定时清理，集合只包含未过期的已登出token
+ * 本地保存一份布隆过滤器，不命中说明一定没有登出，不访问redis；命中再查redis排除误判
+ * 用户的全部token：redis zset member 为用户id，score 为撤销时间（毫秒），签发时间早于该时间的token都已撤销，之后签发的不受影响
+ * 各节点在本地保存 用户id -> 撤销时间，校验只查本地，不访问redis；超过token有效期后该用户撤销前签发的token都已过期，定时清理
+ * 撤销时广播，各节点更新本地；定时从redis全量加载，弥补丢失的广播并去掉已过期的记录
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:31
+ */
+@Slf4j
+@Component
+public class TokenRevocations implements MessageListener {
+    private static final String USER_MESSAGE_PREFIX = "user:";
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final LocalBloomFilter filter;
+    private final Map<Long, Long> userRevokedAt = new ConcurrentHashMap<>(); // 用户id -> 撤销时间（毫秒）
+    private final long ttlMillis;
+    private final long reloadIntervalSeconds;
+    
+    private volatile boolean ready; // 未加载完成前全部查redis
+    private ScheduledExecutorService reloadExecutor;
+    
+    public TokenRevocations(StringRedisTemplate stringRedisTemplate,
+                            @Value("${dianping.session.mode:redis}") String mode,
+                            @Value("${dianping.session.revocation.expected-insertions:100000}") long expectedInsertions,
+                            @Value("${dianping.session.revocation.fpp:0.001}") double fpp,
+                            @Value("${dianping.session.revocation.reload-interval-seconds:60}") long reloadIntervalSeconds,
+                            @Value("${dianping.session.stateless.ttl-seconds:36000}") long ttlSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = SignedTokens.MODE.equals(mode);
+        this.filter = new LocalBloomFilter(expectedInsertions, fpp);
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.reloadIntervalSeconds = reloadIntervalSeconds;
+    }
+    
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        reloadSafely();
+        reloadExecutor = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("token-revocation-reload-").setDaemon(true).build());
+        reloadExecutor.scheduleWithFixedDelay(this::reloadSafely, reloadIntervalSeconds, reloadIntervalSeconds, TimeUnit.SECONDS);
+    }
+    
+    @PreDestroy
+    private void destroy() {
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+        }
+    }
+    
+    /**
+     * 撤销token
+     *
+     * @param tokenId   token id
+     * @param expiresAt token过期时间（秒），之后不再需要记录
+     */
+    public void revoke(long tokenId, long expiresAt) {
+        revoke(String.valueOf(tokenId), expiresAt);
+    }
+    
+    /**
+     * 撤销用户当前已签发的全部token
+     *
+     * @param userId    用户id
+     * @param revokedAt 撤销时间（毫秒），签发时间早于该时间的token都已撤销
+     */
+    public void revokeUser(Long userId, long revokedAt) {
+        stringRedisTemplate.opsForZSet().add(SESSION_REVOKED_USER_KEY, userId.toString(), revokedAt);
+        userRevokedAt.merge(userId, revokedAt, Math::max);
+        stringRedisTemplate.convertAndSend(SESSION_REVOKED_CHANNEL, USER_MESSAGE_PREFIX + userId + ":" + revokedAt);
+    }
+    
+    /**
+     * 是否已撤销，token本身已撤销或所属用户已撤销全部token
+     * token：本地过滤器不命中直接返回，命中时查redis，redis不可用时按已撤销处理
+     * 用户：只查本地；启动时未能加载时查redis
+     *
+     * @param tokenId  token id
+     * @param userId   用户id
+     * @param issuedAt token签发时间（毫秒）
+     * @return 是否已撤销
+     */
+    public boolean isRevoked(long tokenId, Long userId, long issuedAt) {
+        if (tokenRevoked(String.valueOf(tokenId))) {
+            return true;
+        }
+        Long revokedAt = ready ? userRevokedAt.get(userId) : userRevokedAtFromRedis(userId);
+        return revokedAt != null && issuedAt < revokedAt;
+    }
+    
+    /**
+     * 收到其他节点（也包括自己）的撤销广播
+     * token为 token id，用户为 user:用户id:撤销时间
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!body.startsWith(USER_MESSAGE_PREFIX)) {
+            add(body);
+            return;
+        }
+        try {
+            String[] parts = body.substring(USER_MESSAGE_PREFIX.length()).split(":");
+            userRevokedAt.merge(Long.valueOf(parts[0]), Long.valueOf(parts[1]), Math::max);
+        } catch (RuntimeException e) {
+            log.warn("无效的token撤销广播：{}", body);
+        }
+    }
+    
+    private void revoke(String member, long expiresAt) {
+        stringRedisTemplate.opsForZSet().add(SESSION_REVOKED_KEY, member, expiresAt);
+        add(member);
+        stringRedisTemplate.convertAndSend(SESSION_REVOKED_CHANNEL, member);
+    }
+    
+    /**
+     * 本地过滤器不命中直接返回，命中时查redis
+     *
+     * @return 是否已撤销，redis不可用时按已撤销处理
+     */
+    private boolean tokenRevoked(String member) {
+        if (ready && !filter.mightContain(member)) {
+            return false;
+        }
+        try {
+            return stringRedisTemplate.opsForZSet().score(SESSION_REVOKED_KEY, member) != null;
+        } catch (Exception e) {
+            log.warn("token撤销状态查询失败，按已撤销处理：{}", member, e);
+            return true;
+        }
+    }
+    
+    /**
+     * 本地未加载时查redis
+     *
+     * @return 撤销时间，不存在返回null；redis不可用时返回最大值，按已撤销处理
+     */
+    private Long userRevokedAtFromRedis(Long userId) {
+        try {
+            Double score = stringRedisTemplate.opsForZSet().score(SESSION_REVOKED_USER_KEY, userId.toString());
+            return score == null ? null : score.longValue();
+        } catch (Exception e) {
+            log.warn("用户token撤销状态查询失败，按已撤销处理：{}", userId, e);
+            return Long.MAX_VALUE;
+        }
+    }
+    
+    private void reloadSafely() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("token撤销列表加载失败", e);
+        }
+    }
+    
+    /**
+     * 清理已过期的记录，全量重建本地过滤器，加载用户撤销时间
+     */
+    private void reload() {
+        long now = System.currentTimeMillis();
+        stringRedisTemplate.opsForZSet().removeRangeByScore(SESSION_REVOKED_KEY, Double.NEGATIVE_INFINITY, now / 1000);
+        // 撤销时间早于 now - token有效期 的用户，撤销前签发的token都已过期
+        long expiredBefore = now - ttlMillis;
+        stringRedisTemplate.opsForZSet().removeRangeByScore(SESSION_REVOKED_USER_KEY, Double.NEGATIVE_INFINITY, expiredBefore);
+        Set<ZSetOperations.TypedTuple<String>> users = stringRedisTemplate.opsForZSet()
+                                                                          .rangeWithScores(SESSION_REVOKED_USER_KEY, 0, -1);
+        if (users != null) {
+            for (ZSetOperations.TypedTuple<String> user : users) {
+                if (user.getValue() != null && user.getScore() != null) {
+                    userRevokedAt.merge(Long.valueOf(user.getValue()), user.getScore().longValue(), Math::max);
+                }
+            }
+        }
+        userRevokedAt.values().removeIf(revokedAt -> revokedAt < expiredBefore);
+        try (LocalBloomFilter.Rebuild rebuild = filter.rebuild()) {
+            Set<String> members = stringRedisTemplate.opsForZSet().range(SESSION_REVOKED_KEY, 0, -1);
+            if (members != null) {
+                for (String member : members) {
+                    rebuild.add(filter.offsets(member));
+                }
+            }
+            rebuild.commit();
+            ready = true;
+            log.debug("token撤销列表加载完成，共{}条", members == null ? 0 : members.size());
+        }
+    }
+    
+    private void add(String member) {
+        filter.add(filter.offsets(member));
+    }
+}
@@ -0,0 +1,46 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 后台线程的创建方式
+ * dianping.threads.virtual=true 时缓存重建、订单消费等后台线程使用虚拟线程，阻塞在redis、数据库上时不占用平台线程
+ * 线程池的大小和队列不变，仍然用来限制并发，只是池中的线程换成虚拟线程
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:25
+ */
+@Component
+public class WorkerThreads {
+    private final boolean virtual;
+    
+    public WorkerThreads(@Value("${dianping.threads.virtual:false}") boolean virtual) {
+        this.virtual = virtual;
+    }
+    
+    /**
+     * 是否使用虚拟线程
+     *
+     * @return 是否使用虚拟线程
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+    
+    /**
+     * 线程工厂
+     *
+     * @param namePrefix 线程名前缀
+     * @return 虚拟线程或平台线程的工厂
+     */
+    public ThreadFactory threadFactory(String namePrefix) {
+        if (virtual) {
+            return Thread.ofVirtual().name(namePrefix, 0).factory();
+        }
+        return ThreadFactoryBuilder.create().setNamePrefix(namePrefix).build();
+    }
+}
@@ -0,0 +1,137 @@
+package com.zayn.dianping.utils.codec;
+
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 基于字段定义的紧凑二进制编解码器
+ * 支持 {@link BinarySchemas} 中定义的类型及其List，其余类型由 {@link CacheCodecs} 回退到json
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午4:40
+ */
+@Component
+public class BinaryCacheCodec implements CacheCodec {
+    public static final byte ID = 2;
+    public static final String NAME = "binary";
+    private static final int KIND_OBJECT = 0;
+    private static final int KIND_LIST = 1;
+    
+    private final Map<Class<?>, BinarySchema<?>> schemas = BinarySchemas.ALL.stream()
+                                                                             .collect(Collectors.toMap(BinarySchema::type, schema -> schema));
+    
+    @Override
+    public byte id() {
+        return ID;
+    }
+    
+    @Override
+    public String name() {
+        return NAME;
+    }
+    
+    @Override
+    public boolean supports(Object value) {
+        if (value instanceof List<?> list) {
+            if (list.isEmpty()) {
+                return true;
+            }
+            // 按第一个元素的schema写入所有元素，有null或类型不同的交给JSON
+            Object first = list.get(0);
+            if (first == null || !schemas.containsKey(first.getClass())) {
+                return false;
+            }
+            for (Object element : list) {
+                if (element == null || element.getClass() != first.getClass()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return schemas.containsKey(value.getClass());
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Object value) {
+        BinaryWriter writer = new BinaryWriter(128);
+        if (value instanceof List<?> list) {
+            writer.writeByte(KIND_LIST);
+            writer.writeVarLong(list.size());
+            if (list.isEmpty()) {
+                return writer.toByteArray();
+            }
+            BinarySchema<Object> schema = (BinarySchema<Object>) requireSchema(list.get(0).getClass());
+            writer.writeByte(schema.version());
+            for (Object element : list) {
+                schema.write(element, writer);
+            }
+            return writer.toByteArray();
+        }
+        BinarySchema<Object> schema = (BinarySchema<Object>) requireSchema(value.getClass());
+        writer.writeByte(KIND_OBJECT);
+        writer.writeByte(schema.version());
+        schema.write(value, writer);
+        return writer.toByteArray();
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes, int offset, Type type) {
+        BinarySchema<?> schema = schemaOf(type);
+        if (schema == null) {
+            throw new IllegalArgumentException("不支持的二进制编码类型：" + type);
+        }
+        BinaryReader reader = new BinaryReader(bytes, offset);
+        int kind = reader.readByte();
+        if (kind == KIND_LIST) {
+            int size = (int) reader.readVarLong();
+            List<Object> list = new ArrayList<>(size);
+            if (size > 0) {
+                checkVersion(schema, reader.readByte());
+                for (int i = 0; i < size; i++) {
+                    list.add(schema.read(reader));
+                }
+            }
+            return (T) list;
+        }
+        checkVersion(schema, reader.readByte());
+        return (T) schema.read(reader);
+    }
+    
+    /**
+     * 类型对应的字段定义，List 取元素类型
+     */
+    private BinarySchema<?> schemaOf(Type type) {
+        if (type instanceof Class<?> clazz) {
+            return schemas.get(clazz);
+        }
+        if (type instanceof ParameterizedType parameterized
+                && parameterized.getRawType() instanceof Class<?> raw
+                && List.class.isAssignableFrom(raw)) {
+            return schemaOf(parameterized.getActualTypeArguments()[0]);
+        }
+        return null;
+    }
+    
+    private BinarySchema<?> requireSchema(Class<?> type) {
+        BinarySchema<?> schema = schemas.get(type);
+        if (schema == null) {
+            throw new IllegalArgumentException("不支持的二进制编码类型：" + type);
+        }
+        return schema;
+    }
+    
+    private void checkVersion(BinarySchema<?> schema, int version) {
+        if (schema.version() != version) {
+            throw new IllegalStateException("二进制编码版本不一致：" + schema.type().getSimpleName()
+                    + " 期望" + schema.version() + " 实际" + version);
+        }
+    }
+}
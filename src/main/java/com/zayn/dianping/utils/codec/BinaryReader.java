@@ -0,0 +1,75 @@
+package com.zayn.dianping.utils.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 紧凑二进制读取，与 {@link BinaryWriter} 对应
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午4:20
+ */
+public class BinaryReader {
+    private final byte[] buf;
+    private int pos;
+    
+    public BinaryReader(byte[] buf, int offset) {
+        this.buf = buf;
+        this.pos = offset;
+    }
+    
+    public int readByte() {
+        return buf[pos++] & 0xFF;
+    }
+    
+    public long readVarLong() {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buf[pos++];
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        return (v >>> 1) ^ -(v & 1); // zigzag
+    }
+    
+    public Long readLong() {
+        return readByte() == 0 ? null : readVarLong();
+    }
+    
+    public Integer readInt() {
+        Long value = readLong();
+        return value == null ? null : Math.toIntExact(value);
+    }
+    
+    public Double readDouble() {
+        if (readByte() == 0) {
+            return null;
+        }
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (buf[pos++] & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+    
+    public String readString() {
+        int length = (int) readVarLong();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return value;
+    }
+    
+    public LocalDateTime readDateTime() {
+        Long millis = readLong();
+        return millis == null ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
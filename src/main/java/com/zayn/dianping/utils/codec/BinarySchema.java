@@ -0,0 +1,22 @@
+package com.zayn.dianping.utils.codec;
+
+/**
+ * 二进制编码的字段定义
+ * 字段按固定顺序读写，不写字段名；字段变化时升级版本号，旧版本数据解码失败按未命中处理
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午4:25
+ */
+public interface BinarySchema<T> {
+    
+    Class<T> type();
+    
+    /**
+     * 字段版本号
+     */
+    int version();
+    
+    void write(T value, BinaryWriter writer);
+    
+    T read(BinaryReader reader);
+}
@@ -0,0 +1,131 @@
+package com.zayn.dianping.utils.codec;
+
+import com.zayn.dianping.domain.dto.UserDTO;
+import com.zayn.dianping.entity.Shop;
+import com.zayn.dianping.entity.ShopType;
+
+import java.util.List;
+
+/**
+ * 热点缓存对象的二进制字段定义
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午4:30
+ */
+public final class BinarySchemas {
+    
+    public static final BinarySchema<Shop> SHOP = new BinarySchema<>() {
+        @Override
+        public Class<Shop> type() {
+            return Shop.class;
+        }
+        
+        @Override
+        public int version() {
+            return 1;
+        }
+        
+        @Override
+        public void write(Shop shop, BinaryWriter writer) {
+            writer.writeLong(shop.getId());
+            writer.writeString(shop.getName());
+            writer.writeLong(shop.getTypeId());
+            writer.writeString(shop.getImages());
+            writer.writeString(shop.getArea());
+            writer.writeString(shop.getAddress());
+            writer.writeDouble(shop.getX());
+            writer.writeDouble(shop.getY());
+            writer.writeLong(shop.getAvgPrice());
+            writer.writeInt(shop.getSold());
+            writer.writeInt(shop.getComments());
+            writer.writeInt(shop.getScore());
+            writer.writeString(shop.getOpenHours());
+            writer.writeDateTime(shop.getCreateTime());
+            writer.writeDateTime(shop.getUpdateTime());
+            writer.writeDouble(shop.getDistance());
+        }
+        
+        @Override
+        public Shop read(BinaryReader reader) {
+            return new Shop()
+                    .setId(reader.readLong())
+                    .setName(reader.readString())
+                    .setTypeId(reader.readLong())
+                    .setImages(reader.readString())
+                    .setArea(reader.readString())
+                    .setAddress(reader.readString())
+                    .setX(reader.readDouble())
+                    .setY(reader.readDouble())
+                    .setAvgPrice(reader.readLong())
+                    .setSold(reader.readInt())
+                    .setComments(reader.readInt())
+                    .setScore(reader.readInt())
+                    .setOpenHours(reader.readString())
+                    .setCreateTime(reader.readDateTime())
+                    .setUpdateTime(reader.readDateTime())
+                    .setDistance(reader.readDouble());
+        }
+    };
+    
+    public static final BinarySchema<ShopType> SHOP_TYPE = new BinarySchema<>() {
+        @Override
+        public Class<ShopType> type() {
+            return ShopType.class;
+        }
+        
+        @Override
+        public int version() {
+            return 1;
+        }
+        
+        @Override
+        public void write(ShopType shopType, BinaryWriter writer) {
+            writer.writeLong(shopType.getId());
+            writer.writeString(shopType.getName());
+            writer.writeString(shopType.getIcon());
+            writer.writeInt(shopType.getSort());
+        }
+        
+        @Override
+        public ShopType read(BinaryReader reader) {
+            return new ShopType()
+                    .setId(reader.readLong())
+                    .setName(reader.readString())
+                    .setIcon(reader.readString())
+                    .setSort(reader.readInt());
+        }
+    };
+    
+    public static final BinarySchema<UserDTO> USER_DTO = new BinarySchema<>() {
+        @Override
+        public Class<UserDTO> type() {
+            return UserDTO.class;
+        }
+        
+        @Override
+        public int version() {
+            return 1;
+        }
+        
+        @Override
+        public void write(UserDTO user, BinaryWriter writer) {
+            writer.writeLong(user.getId());
+            writer.writeString(user.getNickName());
+            writer.writeString(user.getIcon());
+        }
+        
+        @Override
+        public UserDTO read(BinaryReader reader) {
+            UserDTO user = new UserDTO();
+            user.setId(reader.readLong());
+            user.setNickName(reader.readString());
+            user.setIcon(reader.readString());
+            return user;
+        }
+    };
+    
+    public static final List<BinarySchema<?>> ALL = List.of(SHOP, SHOP_TYPE, USER_DTO);
+    
+    private BinarySchemas() {
+    }
+}
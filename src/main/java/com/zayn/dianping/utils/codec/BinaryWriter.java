@@ -0,0 +1,89 @@
+package com.zayn.dianping.utils.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * 紧凑二进制写入
+ * 整数使用zigzag变长编码，可为null的字段先写一个标记
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午4:20
+ */
+public class BinaryWriter {
+    private byte[] buf;
+    private int pos;
+    
+    public BinaryWriter(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+    
+    public void writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+    
+    public void writeVarLong(long value) {
+        long v = (value << 1) ^ (value >> 63); // zigzag
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+    }
+    
+    public void writeLong(Long value) {
+        if (value == null) {
+            writeByte(0);
+            return;
+        }
+        writeByte(1);
+        writeVarLong(value);
+    }
+    
+    public void writeInt(Integer value) {
+        writeLong(value == null ? null : value.longValue());
+    }
+    
+    public void writeDouble(Double value) {
+        if (value == null) {
+            writeByte(0);
+            return;
+        }
+        writeByte(1);
+        long bits = Double.doubleToRawLongBits(value);
+        ensure(8);
+        for (int i = 7; i >= 0; i--) {
+            buf[pos++] = (byte) (bits >>> (i * 8));
+        }
+    }
+    
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarLong(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+    
+    public void writeDateTime(LocalDateTime value) {
+        writeLong(value == null ? null : value.toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+    
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+    
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.zayn.dianping.utils.codec;
+
+import java.lang.reflect.Type;
+
+/**
+ * 缓存编解码器
+ * 实现类注册为spring bean即可生效，通过 dianping.cache.codec 指定写入使用的编码器
+ * 读取时根据头部的编码标识选择编码器，不同编码器写入的数据可以共存，支持在线切换
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午4:02
+ */
+public interface CacheCodec {
+    
+    /**
+     * 编码标识，写入value的第一个字节
+     * 0 表示不写头部（兼容旧的hutool json数据）
+     *
+     * @return 编码标识
+     */
+    byte id();
+    
+    /**
+     * 编码器名称，对应配置 dianping.cache.codec
+     *
+     * @return 名称
+     */
+    String name();
+    
+    /**
+     * 是否支持编码该数据，不支持时回退到json编码
+     *
+     * @param value 数据，不为null
+     * @return 是否支持
+     */
+    boolean supports(Object value);
+    
+    /**
+     * 编码
+     *
+     * @param value 数据，不为null
+     * @return 编码结果，不含头部
+     */
+    byte[] encode(Object value);
+    
+    /**
+     * 解码
+     *
+     * @param bytes  编码结果，不含头部
+     * @param offset 起始位置
+     * @param type   数据类型
+     * @param <T>    数据类型
+     * @return 数据
+     */
+    <T> T decode(byte[] bytes, int offset, Type type);
+}
@@ -0,0 +1,160 @@
+package com.zayn.dianping.utils.codec;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.zayn.dianping.entity.RedisData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存编解码入口
+ * <pre>
+ * 普通数据：[编码标识 1字节][数据]，编码标识为0（旧版hutool json）时没有头部
+ * 逻辑过期：[0x10][过期时间毫秒 8字节][普通数据]，旧版为hutool json格式的RedisData
+ * </pre>
+ * 写入使用配置的编码器，读取根据头部选择编码器，切换编码器不需要清空缓存
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午4:50
+ */
+@Slf4j
+@Component
+public class CacheCodecs {
+    private static final byte LOGICAL_EXPIRE = 0x10;
+    
+    private final Map<Byte, CacheCodec> codecs = new HashMap<>();
+    private final CacheCodec writer; // 写入使用的编码器
+    private final CacheCodec fallback; // 写入编码器不支持时使用
+    private final CacheCodec legacy; // 没有头部的旧数据
+    
+    public CacheCodecs(List<CacheCodec> codecList,
+                       @Value("${dianping.cache.codec:" + Fastjson2CacheCodec.NAME + "}") String codecName) {
+        for (CacheCodec codec : codecList) {
+            if (codecs.put(codec.id(), codec) != null) {
+                throw new IllegalStateException("缓存编码标识重复：" + codec.id());
+            }
+        }
+        this.writer = codecList.stream()
+                               .filter(codec -> codec.name().equals(codecName))
+                               .findFirst()
+                               .orElseThrow(() -> new IllegalStateException("缓存编码器不存在：" + codecName));
+        this.fallback = codecs.get(Fastjson2CacheCodec.ID);
+        this.legacy = codecs.get(HutoolJsonCacheCodec.ID);
+        log.info("缓存写入编码器：{}", codecName);
+    }
+    
+    /**
+     * 编码，带头部
+     *
+     * @param value 数据，不为null
+     * @return 编码结果
+     */
+    public byte[] encode(Object value) {
+        CacheCodec codec = writer.supports(value) ? writer : fallback;
+        byte[] payload = codec.encode(value);
+        if (codec.id() == HutoolJsonCacheCodec.ID) {
+            return payload;
+        }
+        byte[] bytes = new byte[payload.length + 1];
+        bytes[0] = codec.id();
+        System.arraycopy(payload, 0, bytes, 1, payload.length);
+        return bytes;
+    }
+    
+    /**
+     * 解码
+     *
+     * @param bytes 编码结果，不为空
+     * @param type  数据类型
+     * @return 数据
+     */
+    public <T> T decode(byte[] bytes, Type type) {
+        return decode(bytes, 0, type);
+    }
+    
+    /**
+     * 编码逻辑过期数据
+     *
+     * @param value      数据
+     * @param expireTime 逻辑过期时间
+     * @return 编码结果
+     */
+    public byte[] encodeLogical(Object value, LocalDateTime expireTime) {
+        if (writer.id() == HutoolJsonCacheCodec.ID) {
+            RedisData redisData = new RedisData();
+            redisData.setData(value);
+            redisData.setExpireTime(expireTime);
+            return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] payload = encode(value);
+        byte[] bytes = new byte[payload.length + 9];
+        bytes[0] = LOGICAL_EXPIRE;
+        long millis = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        for (int i = 0; i < 8; i++) {
+            bytes[1 + i] = (byte) (millis >>> (56 - i * 8));
+        }
+        System.arraycopy(payload, 0, bytes, 9, payload.length);
+        return bytes;
+    }
+    
+    /**
+     * 解码逻辑过期数据
+     *
+     * @param bytes 编码结果
+     * @param type  数据类型
+     * @return data 为解码后的数据
+     */
+    public RedisData decodeLogical(byte[] bytes, Type type) {
+        RedisData redisData = new RedisData();
+        if (bytes[0] == LOGICAL_EXPIRE) {
+            redisData.setExpireTime(readExpireTime(bytes));
+            redisData.setData(decode(bytes, 9, type));
+            return redisData;
+        }
+        // 旧数据
+        RedisData legacyData = JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class);
+        redisData.setExpireTime(legacyData.getExpireTime());
+        redisData.setData(JSONUtil.toBean((JSONObject) legacyData.getData(), type, true));
+        return redisData;
+    }
+    
+    /**
+     * 只读取逻辑过期时间，不解码数据
+     *
+     * @param bytes 编码结果
+     * @return 逻辑过期时间
+     */
+    public LocalDateTime logicalExpireTime(byte[] bytes) {
+        if (bytes[0] == LOGICAL_EXPIRE) {
+            return readExpireTime(bytes);
+        }
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class).getExpireTime();
+    }
+    
+    private <T> T decode(byte[] bytes, int offset, Type type) {
+        CacheCodec codec = codecs.get(bytes[offset]);
+        if (codec == null || codec.id() == HutoolJsonCacheCodec.ID) {
+            // 没有头部，旧版json
+            return legacy.decode(bytes, offset, type);
+        }
+        return codec.decode(bytes, offset + 1, type);
+    }
+    
+    private LocalDateTime readExpireTime(byte[] bytes) {
+        long millis = 0;
+        for (int i = 1; i <= 8; i++) {
+            millis = (millis << 8) | (bytes[i] & 0xFF);
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
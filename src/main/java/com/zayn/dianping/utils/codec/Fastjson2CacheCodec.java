@@ -0,0 +1,43 @@
+package com.zayn.dianping.utils.codec;
+
+import com.alibaba.fastjson2.JSON;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+
+/**
+ * fastjson2 编解码器
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午4:10
+ */
+@Component
+public class Fastjson2CacheCodec implements CacheCodec {
+    public static final byte ID = 1;
+    public static final String NAME = "fastjson2";
+    
+    @Override
+    public byte id() {
+        return ID;
+    }
+    
+    @Override
+    public String name() {
+        return NAME;
+    }
+    
+    @Override
+    public boolean supports(Object value) {
+        return true;
+    }
+    
+    @Override
+    public byte[] encode(Object value) {
+        return JSON.toJSONBytes(value);
+    }
+    
+    @Override
+    public <T> T decode(byte[] bytes, int offset, Type type) {
+        return JSON.parseObject(bytes, offset, bytes.length - offset, type);
+    }
+}
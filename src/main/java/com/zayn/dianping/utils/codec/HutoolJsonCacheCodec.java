@@ -0,0 +1,46 @@
+package com.zayn.dianping.utils.codec;
+
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * hutool json 编解码器
+ * 旧版本写入的格式，没有头部，用于读取旧数据和滚动升级期间继续写旧格式
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午4:12
+ */
+@Component
+public class HutoolJsonCacheCodec implements CacheCodec {
+    public static final byte ID = 0;
+    public static final String NAME = "hutool";
+    
+    @Override
+    public byte id() {
+        return ID;
+    }
+    
+    @Override
+    public String name() {
+        return NAME;
+    }
+    
+    @Override
+    public boolean supports(Object value) {
+        return true;
+    }
+    
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public <T> T decode(byte[] bytes, int offset, Type type) {
+        String json = new String(bytes, offset, bytes.length - offset, StandardCharsets.UTF_8);
+        return JSONUtil.toBean(json, type, true);
+    }
+}
@@ -0,0 +1,17 @@
+---
+--- 校验并消费登录验证码
+--- KEYS[1] 验证码key，ARGV[1] 用户提交的验证码
+--- 返回 0 校验通过（验证码已删除，不能重复使用）；1 验证码不存在或已过期；2 验证码不正确
+---
+
+local code = redis.call('get', KEYS[1])
+if not code then
+    return 1
+end
+
+if code ~= ARGV[1] then
+    return 2
+end
+
+redis.call('del', KEYS[1])
+return 0
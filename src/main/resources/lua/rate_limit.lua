@@ -0,0 +1,26 @@
+---
+--- GCRA 限流，每个客户端一个key，保存理论到达时间（TAT，毫秒）
+--- KEYS[1] 限流key
+--- ARGV[1] 发放间隔（毫秒），周期 / 次数
+--- ARGV[2] 突发容量（毫秒），等于周期，允许一个周期的请求一次性到达
+--- 返回 0 放行；大于0 拒绝，为还需等待的毫秒数
+---
+
+local interval = tonumber(ARGV[1])
+local burst = tonumber(ARGV[2])
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local tat = tonumber(redis.call('get', KEYS[1]) or now)
+if tat < now then
+    tat = now
+end
+
+local newTat = tat + interval
+local waitMillis = newTat - burst - now
+if waitMillis > 0 then
+    return waitMillis
+end
+
+redis.call('set', KEYS[1], newTat, 'PX', newTat - now)
+return 0
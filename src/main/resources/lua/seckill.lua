@@ -4,13 +4,43 @@
 --- DateTime: 2024/7/22 下午5:36
 ---
 
+-- key 由 SeckillKeys 生成，分片模式下三个key在同一个slot
+local voucherKey = KEYS[1]
+local orderKey = KEYS[2]
+local streamKey = KEYS[3]
+local statusKey = KEYS[4]
+
 local voucherId = ARGV[1]
 local userId = ARGV[2]
-local stockKey = 'seckill:stock:' .. voucherId
-local orderKey = 'seckill:order:' .. voucherId
+local orderId = ARGV[3]
+local statusTtl = ARGV[4]
+
+-- 秒杀券信息：库存、开始时间、结束时间（毫秒时间戳）、状态
+local voucher = redis.call('hmget', voucherKey, 'stock', 'begin', 'end', 'status')
+if not voucher[1] then
+    -- 优惠券不存在或未预热
+    return 6
+end
+
+-- 判断是否上架
+if voucher[4] ~= '1' then
+    return 5
+end
+
+-- 判断秒杀时间，以redis时间为准，避免各节点时钟不一致
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+if now < tonumber(voucher[2]) then
+    -- 尚未开始
+    return 3
+end
+if now > tonumber(voucher[3]) then
+    -- 已经结束
+    return 4
+end
 
 -- 判断库存是否足够
-if tonumber(redis.call('get', stockKey)) <= 0 then
+if tonumber(voucher[1]) <= 0 then
     -- 库存不足
     return 1
 end
@@ -22,9 +52,16 @@ if redis.call('sismember', orderKey, userId) == 1 then
 end
 
 -- 减库存
-redis.call('incrby', stockKey, -1)
+redis.call('hincrby', voucherKey, 'stock', -1)
 
 -- 记录下单用户
 redis.call('sadd', orderKey, userId)
 
-return 0
\ No newline at end of file
+-- 发送订单消息，和扣库存在同一个脚本中原子执行，进程宕机也不会丢单
+redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+
+-- 订单状态，消费者落库后更新
+redis.call('hset', statusKey, 'status', 'QUEUED', 'userId', userId)
+redis.call('expire', statusKey, statusTtl)
+
+return 0
@@ -0,0 +1,15 @@
+---
+--- 分片库存，从兄弟桶借库存
+--- 借出剩余库存的一半（至少1个），返回借到的数量，没有库存返回0
+--- 借出的库存先记在 transit 字段，调用方加到自己的桶之后再扣回；售罄确认时 stock + transit 都为0才算售罄
+---
+
+local stock = tonumber(redis.call('hget', KEYS[1], 'stock') or '0')
+if stock <= 0 then
+    return 0
+end
+
+local take = math.ceil(stock / 2)
+redis.call('hincrby', KEYS[1], 'stock', -take)
+redis.call('hincrby', KEYS[1], 'transit', take)
+return take
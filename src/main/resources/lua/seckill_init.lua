@@ -0,0 +1,11 @@
+---
+--- 秒杀券信息写入一个桶：库存、开始时间、结束时间、状态
+--- key已存在时不覆盖，返回0；活动期间重启、多个节点同时预热时，不会用落后的数据库库存覆盖redis中的剩余库存
+---
+
+if redis.call('exists', KEYS[1]) == 1 then
+    return 0
+end
+
+redis.call('hset', KEYS[1], 'stock', ARGV[1], 'begin', ARGV[2], 'end', ARGV[3], 'status', ARGV[4])
+return 1
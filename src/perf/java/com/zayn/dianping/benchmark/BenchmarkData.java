@@ -0,0 +1,45 @@
+package com.zayn.dianping.benchmark;
+
+import com.zayn.dianping.domain.dto.UserDTO;
+import com.zayn.dianping.entity.Shop;
+
+import java.time.LocalDateTime;
+
+/**
+ * 压测用的样例数据，取自 dianping.sql 中的商铺
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午5:30
+ */
+public final class BenchmarkData {
+    
+    private BenchmarkData() {
+    }
+    
+    public static Shop shop(long id) {
+        return new Shop()
+                .setId(id)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg,https://qcloud.dpfile.com/pc/IOf6VX3qaBgFXFVgp75w-KKJmWZjFc8GXDU8g9bQC6YGCpAmG00QbfT4vCCBj7njuzFvxlbkWx5uwqY2qcjixFEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vmIU_8ZGOT1OjpJmLxG6urQ.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+    
+    public static UserDTO user(long id) {
+        UserDTO user = new UserDTO();
+        user.setId(id);
+        user.setNickName("user_" + id);
+        user.setIcon("/imgs/icons/user" + id + ".jpg");
+        return user;
+    }
+}
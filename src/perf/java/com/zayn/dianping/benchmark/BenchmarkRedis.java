@@ -0,0 +1,121 @@
+package com.zayn.dianping.benchmark;
+
+import com.zayn.dianping.utils.BloomFilters;
+import com.zayn.dianping.utils.CacheClient;
+import com.zayn.dianping.utils.CacheMetrics;
+import com.zayn.dianping.utils.NearCache;
+import com.zayn.dianping.utils.SessionCache;
+import com.zayn.dianping.utils.SignedTokens;
+import com.zayn.dianping.utils.TokenRevocations;
+import com.zayn.dianping.utils.WorkerThreads;
+import com.zayn.dianping.utils.codec.BinaryCacheCodec;
+import com.zayn.dianping.utils.codec.CacheCodecs;
+import com.zayn.dianping.utils.codec.Fastjson2CacheCodec;
+import com.zayn.dianping.utils.codec.HutoolJsonCacheCodec;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 压测用的redis连接
+ * 连接本地redis（默认 localhost:6379，可用 -Dbench.redis.host / -Dbench.redis.port 修改），
+ * 例如 docker run -d -p 6379:6379 redis:7，压测数据的key统一以 bench: 开头，结束时删除
+ * 有 @PostConstruct / @PreDestroy 的组件放到只有这一个bean的spring容器中创建，由容器调用，结束时关闭
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:22
+ */
+public final class BenchmarkRedis implements AutoCloseable {
+    public static final String KEY_PREFIX = "bench:";
+    
+    private final LettuceConnectionFactory connectionFactory;
+    private final StringRedisTemplate template;
+    private final List<AnnotationConfigApplicationContext> contexts = new ArrayList<>();
+    
+    public BenchmarkRedis() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("bench.redis.host", "localhost"),
+                Integer.getInteger("bench.redis.port", 6379));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        template = new StringRedisTemplate(connectionFactory);
+    }
+    
+    public StringRedisTemplate template() {
+        return template;
+    }
+    
+    /**
+     * 在只有一个bean的spring容器中创建组件，执行 @PostConstruct，关闭时执行 @PreDestroy
+     *
+     * @param type     组件类型
+     * @param supplier 按指定配置创建组件
+     * @return 初始化后的组件
+     */
+    public <T> T managed(Class<T> type, Supplier<T> supplier) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.registerBean(type, supplier);
+        context.refresh();
+        contexts.add(context);
+        return context.getBean(type);
+    }
+    
+    /**
+     * 按应用默认配置组装缓存客户端，不依赖spring容器和数据库
+     *
+     * @param nearCacheEnabled 是否开启一级缓存
+     * @param virtualThreads   缓存重建是否使用虚拟线程
+     * @return 缓存客户端
+     */
+    public CacheClient cacheClient(boolean nearCacheEnabled, boolean virtualThreads) {
+        NearCache nearCache = new NearCache(template, nearCacheEnabled, 1000, 60, Map.of());
+        // 压测key不属于任何布隆过滤器，一律放行
+        BloomFilters bloomFilters = new BloomFilters(template, null, null, 1000, 0.01, 1000, 0.01);
+        CacheCodecs codecs = new CacheCodecs(
+                List.of(new HutoolJsonCacheCodec(), new Fastjson2CacheCodec(), new BinaryCacheCodec()),
+                System.getProperty("bench.cache.codec", Fastjson2CacheCodec.NAME));
+        return new CacheClient(template, nearCache, bloomFilters, codecs, new CacheMetrics(), new WorkerThreads(virtualThreads));
+    }
+    
+    /**
+     * 按应用默认配置组装会话缓存，并启动批量续期线程
+     *
+     * @param localEnabled 是否开启本地会话缓存
+     * @return 会话缓存
+     */
+    public SessionCache sessionCache(boolean localEnabled) {
+        return managed(SessionCache.class, () -> new SessionCache(template, localEnabled, 10000, 30, 0.5, 1000));
+    }
+    
+    /**
+     * 组装无状态token，密钥固定，撤销列表按应用默认配置
+     *
+     * @param stateless 是否为无状态模式
+     * @return 无状态token
+     */
+    public SignedTokens signedTokens(boolean stateless) {
+        String mode = stateless ? SignedTokens.MODE : "redis";
+        TokenRevocations revocations = managed(TokenRevocations.class,
+                () -> new TokenRevocations(template, mode, 100000, 0.001, 60, 36000));
+        return new SignedTokens(revocations, mode, "benchmark-secret-benchmark-secret", 36000);
+    }
+    
+    @Override
+    public void close() {
+        // 先停止组件的后台线程，它们还会访问redis
+        contexts.forEach(AnnotationConfigApplicationContext::close);
+        Set<String> keys = template.keys(KEY_PREFIX + "*");
+        if (keys != null && !keys.isEmpty()) {
+            template.delete(keys);
+        }
+        connectionFactory.destroy();
+    }
+}
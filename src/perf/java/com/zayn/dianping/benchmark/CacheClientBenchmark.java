@@ -0,0 +1,122 @@
+package com.zayn.dianping.benchmark;
+
+import com.zayn.dianping.entity.Shop;
+import com.zayn.dianping.utils.CacheClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 缓存查询三种策略的对比：缓存穿透 / 互斥锁 / 逻辑过期
+ * hit 系列：1000个商铺预先写入缓存，轮流查询
+ * nullHit：查询缓存的空值
+ * miss：每次查询新id，查库（按 dbLatencyMicros 模拟耗时）后写入缓存
+ * 数据库用模拟耗时的函数代替，只衡量缓存路径本身
+ * 开启一级缓存时，命中直接返回缓存的对象，setup中校验两次命中是同一个对象，没有复制
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheClientBenchmark {
+    private static final String KEY_PREFIX = BenchmarkRedis.KEY_PREFIX + "shop:";
+    private static final String LOGICAL_KEY_PREFIX = BenchmarkRedis.KEY_PREFIX + "shop:logical:";
+    private static final String LOCK_PREFIX = BenchmarkRedis.KEY_PREFIX + "lock:shop:";
+    private static final int KEYS = 1000;
+    private static final long ABSENT_ID = -1L;
+    
+    @Param({"true", "false"})
+    private boolean nearCache;
+    
+    // 模拟的查库耗时
+    @Param({"0", "1000"})
+    private long dbLatencyMicros;
+    
+    private BenchmarkRedis redis;
+    private CacheClient cacheClient;
+    private final AtomicLong missId = new AtomicLong(1_000_000L);
+    
+    @Setup
+    public void setup() {
+        redis = new BenchmarkRedis();
+        cacheClient = redis.cacheClient(nearCache, false);
+        for (long id = 0; id < KEYS; id++) {
+            Shop shop = BenchmarkData.shop(id);
+            cacheClient.set(KEY_PREFIX + id, shop, 30L, TimeUnit.MINUTES);
+            cacheClient.setWithLogicalExpire(LOGICAL_KEY_PREFIX + id, shop, 30L, TimeUnit.MINUTES);
+        }
+        // 缓存空值
+        cacheClient.queryWithPassThrough(KEY_PREFIX, ABSENT_ID, Shop.class, this::queryDb, 30L, TimeUnit.MINUTES);
+        if (nearCache) {
+            Shop first = cacheClient.queryWithPassThrough(KEY_PREFIX, 0L, Shop.class, this::queryDb, 30L, TimeUnit.MINUTES);
+            Shop second = cacheClient.queryWithPassThrough(KEY_PREFIX, 0L, Shop.class, this::queryDb, 30L, TimeUnit.MINUTES);
+            if (first != second) {
+                throw new IllegalStateException("一级缓存命中不应复制对象");
+            }
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        redis.close();
+    }
+    
+    /**
+     * 每个线程按自己的顺序轮流访问预热的key
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private long next;
+        
+        long next() {
+            return next++ % KEYS;
+        }
+    }
+    
+    @Benchmark
+    public Shop passThroughHit(Cursor cursor) {
+        return cacheClient.queryWithPassThrough(KEY_PREFIX, cursor.next(), Shop.class, this::queryDb, 30L, TimeUnit.MINUTES);
+    }
+    
+    @Benchmark
+    public Shop mutexHit(Cursor cursor) {
+        return cacheClient.queryWithMutex(KEY_PREFIX, LOCK_PREFIX, cursor.next(), Shop.class, this::queryDb, 30L, TimeUnit.MINUTES);
+    }
+    
+    @Benchmark
+    public Shop logicalExpireHit(Cursor cursor) {
+        return cacheClient.queryWithLogicalExpire(LOGICAL_KEY_PREFIX, LOCK_PREFIX, cursor.next(), Shop.class, this::queryDb, 30L, TimeUnit.MINUTES);
+    }
+    
+    @Benchmark
+    public Shop passThroughNullHit() {
+        return cacheClient.queryWithPassThrough(KEY_PREFIX, ABSENT_ID, Shop.class, this::queryDb, 30L, TimeUnit.MINUTES);
+    }
+    
+    @Benchmark
+    public Shop passThroughMiss() {
+        return cacheClient.queryWithPassThrough(KEY_PREFIX, missId.getAndIncrement(), Shop.class, this::queryDb, 30L, TimeUnit.MINUTES);
+    }
+    
+    @Benchmark
+    public Shop mutexMiss() {
+        return cacheClient.queryWithMutex(KEY_PREFIX, LOCK_PREFIX, missId.getAndIncrement(), Shop.class, this::queryDb, 30L, TimeUnit.MINUTES);
+    }
+    
+    /**
+     * 模拟查库，负数id不存在
+     */
+    private Shop queryDb(Long id) {
+        if (dbLatencyMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(dbLatencyMicros));
+        }
+        return id < 0 ? null : BenchmarkData.shop(id);
+    }
+}
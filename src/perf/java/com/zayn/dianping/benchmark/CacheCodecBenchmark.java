@@ -0,0 +1,70 @@
+package com.zayn.dianping.benchmark;
+
+import com.zayn.dianping.domain.dto.UserDTO;
+import com.zayn.dianping.entity.Shop;
+import com.zayn.dianping.utils.codec.BinaryCacheCodec;
+import com.zayn.dianping.utils.codec.CacheCodec;
+import com.zayn.dianping.utils.codec.Fastjson2CacheCodec;
+import com.zayn.dianping.utils.codec.HutoolJsonCacheCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存编解码对比：hutool json / fastjson2 / 二进制
+ * 编码后大小在初始化时打印
+ *
+ * @author zayn
+ * * @date 2026/10/18/下午5:30
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+    
+    @Param({HutoolJsonCacheCodec.NAME, Fastjson2CacheCodec.NAME, BinaryCacheCodec.NAME})
+    private String codecName;
+    
+    private CacheCodec codec;
+    private Shop shop;
+    private UserDTO user;
+    private byte[] shopBytes;
+    private byte[] userBytes;
+    
+    @Setup
+    public void setup() {
+        codec = switch (codecName) {
+            case HutoolJsonCacheCodec.NAME -> new HutoolJsonCacheCodec();
+            case Fastjson2CacheCodec.NAME -> new Fastjson2CacheCodec();
+            default -> new BinaryCacheCodec();
+        };
+        shop = BenchmarkData.shop(1L);
+        user = BenchmarkData.user(1L);
+        shopBytes = codec.encode(shop);
+        userBytes = codec.encode(user);
+        System.out.printf("%n[%s] Shop %d bytes, UserDTO %d bytes%n", codecName, shopBytes.length, userBytes.length);
+    }
+    
+    @Benchmark
+    public byte[] encodeShop() {
+        return codec.encode(shop);
+    }
+    
+    @Benchmark
+    public Shop decodeShop() {
+        return codec.decode(shopBytes, 0, Shop.class);
+    }
+    
+    @Benchmark
+    public byte[] encodeUser() {
+        return codec.encode(user);
+    }
+    
+    @Benchmark
+    public UserDTO decodeUser() {
+        return codec.decode(userBytes, 0, UserDTO.class);
+    }
+}
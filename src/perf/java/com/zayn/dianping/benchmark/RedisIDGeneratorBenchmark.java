@@ -0,0 +1,54 @@
+package com.zayn.dianping.benchmark;
+
+import com.zayn.dianping.utils.RedisIDGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * id生成：每个id一次INCR（incr） / 号段（segment）
+ * 单线程和8线程各测一次，号段模式下只有预取时访问redis
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisIDGeneratorBenchmark {
+    private static final String KEY_PREFIX = BenchmarkRedis.KEY_PREFIX + "order";
+    
+    @Param({"incr", "segment"})
+    private String mode;
+    
+    private BenchmarkRedis redis;
+    private RedisIDGenerator generator;
+    
+    @Setup
+    public void setup() {
+        redis = new BenchmarkRedis();
+        // 按应用默认配置初始化
+        generator = redis.managed(RedisIDGenerator.class,
+                () -> new RedisIDGenerator(redis.template(), mode, 1000, 0.8, 1000, true));
+    }
+    
+    @TearDown
+    public void tearDown() {
+        redis.template().delete(redis.template().keys("icr:" + KEY_PREFIX + ":*"));
+        redis.close();
+    }
+    
+    @Benchmark
+    public long nextId() {
+        return generator.nextId(KEY_PREFIX);
+    }
+    
+    @Benchmark
+    @Threads(8)
+    public long nextIdContended() {
+        return generator.nextId(KEY_PREFIX);
+    }
+}
@@ -0,0 +1,82 @@
+package com.zayn.dianping.benchmark;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import com.zayn.dianping.interceptor.RefreshTokenInterceptor;
+import com.zayn.dianping.utils.SignedTokens;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.zayn.dianping.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.zayn.dianping.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * 每个请求都会经过的token拦截器：带有效token / 不带token，redis会话（本地会话缓存开启 / 关闭）/ 无状态签名token
+ * 包含 preHandle 和 afterCompletion，和一次真实请求一致
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RefreshTokenInterceptorBenchmark {
+    private static final String TOKEN = "bench-token";
+    
+    // local：redis会话 + 本地会话缓存；redis：只用redis会话；stateless：签名token
+    @Param({"local", "redis", "stateless"})
+    private String session;
+    
+    private BenchmarkRedis redis;
+    private RefreshTokenInterceptor interceptor;
+    private MockHttpServletRequest loggedIn;
+    private MockHttpServletRequest anonymous;
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    
+    @Setup
+    public void setup() {
+        redis = new BenchmarkRedis();
+        SignedTokens signedTokens = redis.signedTokens("stateless".equals(session));
+        interceptor = new RefreshTokenInterceptor(redis.sessionCache("local".equals(session)), signedTokens);
+        
+        // 和登录时写入的格式一致
+        Map<String, Object> user = BeanUtil.beanToMap(BenchmarkData.user(1L), new HashMap<>(),
+                CopyOptions.create().setIgnoreNullValue(true).setFieldValueEditor((k, v) -> v.toString()));
+        redis.template().opsForHash().putAll(LOGIN_USER_KEY + TOKEN, user);
+        redis.template().expire(LOGIN_USER_KEY + TOKEN, LOGIN_USER_TTL, TimeUnit.SECONDS);
+        
+        loggedIn = new MockHttpServletRequest("GET", "/shop/1");
+        loggedIn.addHeader("Authorization", signedTokens.enabled() ? signedTokens.issue(BenchmarkData.user(1L)) : TOKEN);
+        anonymous = new MockHttpServletRequest("GET", "/shop/1");
+    }
+    
+    @TearDown
+    public void tearDown() {
+        redis.template().delete(LOGIN_USER_KEY + TOKEN);
+        redis.close();
+    }
+    
+    @Benchmark
+    public boolean withToken() throws Exception {
+        return handle(loggedIn);
+    }
+    
+    @Benchmark
+    public boolean withoutToken() throws Exception {
+        return handle(anonymous);
+    }
+    
+    private boolean handle(MockHttpServletRequest request) throws Exception {
+        boolean result = interceptor.preHandle(request, response, null);
+        interceptor.afterCompletion(request, response, null, null);
+        return result;
+    }
+}
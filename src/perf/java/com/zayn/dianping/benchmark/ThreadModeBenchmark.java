@@ -0,0 +1,79 @@
+package com.zayn.dianping.benchmark;
+
+import com.zayn.dianping.entity.Shop;
+import com.zayn.dianping.utils.CacheClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 平台线程池和虚拟线程处理大量并发阻塞请求的对比
+ * 模拟一波秒杀流量：concurrency 个请求同时到达，每个请求查一次redis缓存，再阻塞 blockMillis 毫秒（模拟数据库或重试等待），
+ * 平台线程模式用和tomcat默认值一样的200个线程处理，虚拟线程模式每个请求一个虚拟线程，测量整波请求的完成时间
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:25
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadModeBenchmark {
+    private static final String KEY_PREFIX = BenchmarkRedis.KEY_PREFIX + "shop:";
+    private static final int PLATFORM_THREADS = 200;
+    private static final int KEYS = 100;
+    
+    @Param({"platform", "virtual"})
+    private String mode;
+    
+    @Param({"2000"})
+    private int concurrency;
+    
+    @Param({"10"})
+    private long blockMillis;
+    
+    private BenchmarkRedis redis;
+    private CacheClient cacheClient;
+    private ExecutorService executor;
+    
+    @Setup
+    public void setup() {
+        redis = new BenchmarkRedis();
+        boolean virtual = "virtual".equals(mode);
+        cacheClient = redis.cacheClient(false, virtual);
+        for (long id = 0; id < KEYS; id++) {
+            cacheClient.set(KEY_PREFIX + id, BenchmarkData.shop(id), 30L, TimeUnit.MINUTES);
+        }
+        executor = virtual ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        redis.close();
+    }
+    
+    @Benchmark
+    public int burst() throws Exception {
+        List<Future<Shop>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            long id = i % KEYS;
+            futures.add(executor.submit(() -> {
+                Shop shop = cacheClient.queryWithPassThrough(KEY_PREFIX, id, Shop.class, BenchmarkData::shop, 30L, TimeUnit.MINUTES);
+                Thread.sleep(blockMillis);
+                return shop;
+            }));
+        }
+        int done = 0;
+        for (Future<Shop> future : futures) {
+            if (future.get() != null) {
+                done++;
+            }
+        }
+        return done;
+    }
+}
@@ -0,0 +1,294 @@
+package com.zayn.dianping.loadtest;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.zayn.dianping.DianpingApplication;
+import com.zayn.dianping.entity.SeckillVoucher;
+import com.zayn.dianping.entity.Voucher;
+import com.zayn.dianping.service.ISeckillVoucherService;
+import com.zayn.dianping.service.IVoucherOrderService;
+import com.zayn.dianping.service.IVoucherService;
+import com.zayn.dianping.utils.SeckillKeys;
+import com.zayn.dianping.utils.WorkerThreads;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.zayn.dianping.utils.RedisConstants.LOGIN_CODE_KEY;
+
+/**
+ * 秒杀压测
+ * 启动应用（连接本地的mysql、redis），新建一张秒杀券，用虚拟线程模拟大量用户同时抢购，
+ * 统计吞吐量和延迟分位数，等待订单全部落库后核对redis和数据库中的库存、订单是否一致
+ * <p>
+ * 本地环境：
+ * docker run -d -p 6379:6379 redis:7
+ * docker run -d -p 3306:3306 -e MYSQL_ROOT_PASSWORD=root -e MYSQL_DATABASE=dianping
+ * -v $PWD/src/main/resources/sql:/docker-entrypoint-initdb.d mysql:8
+ * <p>
+ * 运行：mvn -Pperf test-compile exec:java@loadtest -Dloadtest.users=5000 -Dloadtest.stock=200
+ * 应用配置（spring.datasource.*、spring.data.redis.*、dianping.*）都可以用 -D 覆盖
+ * 对比平台线程和虚拟线程：分别加 -Ddianping.threads.virtual=false / true 各跑一次
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午10:23
+ */
+public class SeckillLoadTest {
+    // 抢购用户数
+    private static final int USERS = Integer.getInteger("loadtest.users", 2000);
+    // 秒杀库存
+    private static final int STOCK = Integer.getInteger("loadtest.stock", 100);
+    // 每个用户的请求次数，大于1时检验一人一单
+    private static final int REQUESTS_PER_USER = Integer.getInteger("loadtest.requests-per-user", 2);
+    // 等待订单落库的最长时间
+    private static final long DRAIN_TIMEOUT_SECONDS = Long.getLong("loadtest.drain-timeout-seconds", 60L);
+    // 手机号起始值，每次压测换一批用户时修改
+    private static final long PHONE_BASE = Long.getLong("loadtest.phone-base", 13_900_000_000L);
+    
+    private final HttpClient httpClient = HttpClient.newBuilder()
+                                                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                                                    .connectTimeout(Duration.ofSeconds(5))
+                                                    .build();
+    private final ConfigurableApplicationContext context;
+    private final String baseUrl;
+    
+    public static void main(String[] args) throws Exception {
+        SpringApplication application = new SpringApplication(DianpingApplication.class);
+        application.setDefaultProperties(Map.of(
+                "server.port", "0",
+                "spring.datasource.url", "jdbc:mysql://localhost:3306/dianping?useSSL=false&serverTimezone=Asia/Shanghai",
+                "spring.datasource.username", "root",
+                "spring.datasource.password", "root",
+                "spring.data.redis.host", "localhost",
+                "spring.data.redis.port", "6379",
+                "spring.data.redis.password", "",
+                // 所有虚拟用户来自同一个ip，关闭限流
+                "dianping.rate-limit.enabled", "false"
+        ));
+        
+        boolean consistent;
+        try (ConfigurableApplicationContext context = application.run(args)) {
+            consistent = new SeckillLoadTest(context).run();
+        }
+        System.exit(consistent ? 0 : 1);
+    }
+    
+    SeckillLoadTest(ConfigurableApplicationContext context) {
+        this.context = context;
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        this.baseUrl = "http://localhost:" + port;
+    }
+    
+    boolean run() throws Exception {
+        Long voucherId = createVoucher();
+        List<String> tokens = login();
+        System.out.printf("优惠券%d，库存%d，用户%d，每人请求%d次，%s%n", voucherId, STOCK, USERS, REQUESTS_PER_USER,
+                context.getBean(WorkerThreads.class).isVirtual() ? "虚拟线程" : "平台线程");
+        
+        // 所有用户准备好后同时开抢
+        int total = USERS * REQUESTS_PER_USER;
+        long[] latencies = new long[total];
+        AtomicInteger index = new AtomicInteger();
+        Map<String, AtomicInteger> outcomes = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        long begin;
+        long elapsed;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String token : tokens) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < REQUESTS_PER_USER; i++) {
+                        long t0 = System.nanoTime();
+                        String outcome = seckill(voucherId, token);
+                        latencies[index.getAndIncrement()] = System.nanoTime() - t0;
+                        outcomes.computeIfAbsent(outcome, k -> new AtomicInteger()).incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            begin = System.nanoTime();
+            start.countDown();
+        }
+        elapsed = System.nanoTime() - begin;
+        
+        report(latencies, index.get(), elapsed, outcomes);
+        int succeeded = outcomes.getOrDefault("成功", new AtomicInteger()).get();
+        return verify(voucherId, succeeded);
+    }
+    
+    /**
+     * 新建秒杀券，已经开始，一小时后结束
+     */
+    private Long createVoucher() {
+        Voucher voucher = new Voucher()
+                .setShopId(1L)
+                .setTitle("压测券")
+                .setSubTitle("压测券")
+                .setRules("压测")
+                .setPayValue(100L)
+                .setActualValue(1000L)
+                .setType(1)
+                .setStatus(1)
+                .setStock(STOCK)
+                .setBeginTime(LocalDateTime.now().minusMinutes(1))
+                .setEndTime(LocalDateTime.now().plusHours(1));
+        context.getBean(IVoucherService.class).addSeckillVoucher(voucher);
+        return voucher.getId();
+    }
+    
+    /**
+     * 通过验证码登录所有用户，验证码直接从redis读取
+     */
+    private List<String> login() throws Exception {
+        StringRedisTemplate redis = context.getBean(StringRedisTemplate.class);
+        List<Future<String>> futures = new ArrayList<>(USERS);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Semaphore permits = new Semaphore(200);
+            for (int i = 0; i < USERS; i++) {
+                String phone = String.valueOf(PHONE_BASE + i);
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        post("/user/code?phone=" + phone, null, null);
+                        String code = redis.opsForValue().get(LOGIN_CODE_KEY + phone);
+                        JSONObject result = post("/user/login", JSONUtil.createObj().set("phone", phone).set("code", code).toString(), null);
+                        return result.getJSONObject("data").getStr("token");
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+        List<String> tokens = new ArrayList<>(USERS);
+        for (Future<String> future : futures) {
+            tokens.add(future.get());
+        }
+        return tokens;
+    }
+    
+    /**
+     * 抢购一次
+     *
+     * @return 成功，或失败原因
+     */
+    private String seckill(Long voucherId, String token) {
+        try {
+            JSONObject result = post("/voucher-order/seckill/" + voucherId, null, token);
+            return Boolean.TRUE.equals(result.getBool("success")) ? "成功" : result.getStr("errorMsg");
+        } catch (Exception e) {
+            return "异常：" + e.getClass().getSimpleName();
+        }
+    }
+    
+    private JSONObject post(String path, String json, String token) throws Exception {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                                                 .timeout(Duration.ofSeconds(30))
+                                                 .POST(json == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json));
+        if (json != null) {
+            builder.header("Content-Type", "application/json");
+        }
+        if (token != null) {
+            builder.header("Authorization", token);
+        }
+        HttpResponse<String> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + " " + path);
+        }
+        return JSONUtil.parseObj(response.body());
+    }
+    
+    private static void report(long[] latencies, int count, long elapsedNanos, Map<String, AtomicInteger> outcomes) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        double seconds = elapsedNanos / 1e9;
+        System.out.println("==================== 压测结果 ====================");
+        System.out.printf("请求数 %d，耗时 %.2f s，吞吐量 %.0f req/s%n", count, seconds, count / seconds);
+        System.out.printf("延迟 p50 %.2f ms，p99 %.2f ms，p999 %.2f ms，max %.2f ms%n",
+                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999), percentile(sorted, 1.0));
+        outcomes.forEach((outcome, n) -> System.out.printf("  %s：%d%n", outcome, n.get()));
+    }
+    
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(i, 0)] / 1e6;
+    }
+    
+    /**
+     * 一致性校验
+     * redis：剩余库存 + 下单用户数 = 初始库存
+     * 数据库：剩余库存 + 订单数 = 初始库存，订单数 = redis下单用户数 = 接口返回成功数，没有超卖
+     */
+    private boolean verify(Long voucherId, int succeeded) throws InterruptedException {
+        StringRedisTemplate redis = context.getBean(StringRedisTemplate.class);
+        SeckillKeys keys = context.getBean(SeckillKeys.class);
+        ISeckillVoucherService seckillVoucherService = context.getBean(ISeckillVoucherService.class);
+        IVoucherOrderService voucherOrderService = context.getBean(IVoucherOrderService.class);
+        
+        long redisStock = 0;
+        long redisOrders = 0;
+        for (int i = 0; i < keys.shards(); i++) {
+            Object stock = redis.opsForHash().get(keys.voucherKey(voucherId, i), "stock");
+            redisStock += stock == null ? 0 : Long.parseLong(stock.toString());
+            Long size = redis.opsForSet().size(keys.orderKey(voucherId, i));
+            redisOrders += size == null ? 0 : size;
+        }
+        
+        // 等待消费者落库
+        long dbOrders = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        long drainStart = System.nanoTime();
+        while (System.nanoTime() < deadline) {
+            dbOrders = voucherOrderService.query().eq("voucher_id", voucherId).count();
+            if (dbOrders >= redisOrders) {
+                break;
+            }
+            Thread.sleep(200);
+        }
+        System.out.printf("订单落库耗时 %.2f s%n", (System.nanoTime() - drainStart) / 1e9);
+        SeckillVoucher seckillVoucher = seckillVoucherService.getById(voucherId);
+        long dbStock = seckillVoucher.getStock();
+        
+        System.out.println("==================== 一致性校验 ====================");
+        System.out.printf("初始库存 %d，接口成功 %d%n", STOCK, succeeded);
+        System.out.printf("redis 剩余库存 %d，下单用户 %d%n", redisStock, redisOrders);
+        System.out.printf("mysql 剩余库存 %d，订单 %d%n", dbStock, dbOrders);
+        
+        List<String> errors = new ArrayList<>();
+        if (redisStock + redisOrders != STOCK) {
+            errors.add("redis 剩余库存 + 下单用户 != 初始库存");
+        }
+        if (dbStock + dbOrders != STOCK) {
+            errors.add("mysql 剩余库存 + 订单 != 初始库存");
+        }
+        if (dbOrders != redisOrders) {
+            errors.add("mysql 订单数 != redis 下单用户数");
+        }
+        if (succeeded != redisOrders) {
+            errors.add("接口成功数 != redis 下单用户数");
+        }
+        if (dbOrders > STOCK || redisStock < 0 || dbStock < 0) {
+            errors.add("超卖");
+        }
+        errors.forEach(error -> System.out.println("不一致：" + error));
+        if (succeeded < Math.min(STOCK, USERS)) {
+            // 准入限流可能拒绝部分请求，不算错误
+            System.out.println("提示：库存未售完，可增加用户数或每人请求次数");
+        }
+        System.out.println(errors.isEmpty() ? "一致" : "校验失败");
+        return errors.isEmpty();
+    }
+}
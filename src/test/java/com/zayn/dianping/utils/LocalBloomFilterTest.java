@@ -0,0 +1,107 @@
+package com.zayn.dianping.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 布隆过滤器：容量计算、bit位置、误判率、合并redis bitmap、全量重建
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午11:05
+ */
+class LocalBloomFilterTest {
+    
+    @Test
+    void sizing() {
+        // m = -n * ln(p) / (ln2)^2，k = m / n * ln2
+        assertEquals(9_585_058L, LocalBloomFilter.optimalNumOfBits(1_000_000, 0.01));
+        assertEquals(7, LocalBloomFilter.optimalNumOfHashFunctions(1_000_000, 9_585_058L));
+        assertEquals(10, LocalBloomFilter.optimalNumOfHashFunctions(100_000, LocalBloomFilter.optimalNumOfBits(100_000, 0.001)));
+        // 下限
+        assertEquals(64L, LocalBloomFilter.optimalNumOfBits(1, 0.5));
+        assertEquals(1, LocalBloomFilter.optimalNumOfHashFunctions(1_000, 64));
+    }
+    
+    @Test
+    void offsetsAreStableAndInRange() {
+        LocalBloomFilter filter = new LocalBloomFilter(1_000, 0.01);
+        long[] offsets = filter.offsets(42L);
+        
+        assertEquals(filter.numHashes(), offsets.length);
+        for (long offset : offsets) {
+            assertTrue(offset >= 0 && offset < filter.numBits());
+        }
+        // 按字符串计算，Long和String得到相同的位置，各节点和redis一致
+        assertArrayEquals(offsets, new LocalBloomFilter(1_000, 0.01).offsets("42"));
+    }
+    
+    @Test
+    void noFalseNegativesAndBoundedFalsePositives() {
+        int n = 10_000;
+        LocalBloomFilter filter = new LocalBloomFilter(n, 0.01);
+        for (long i = 0; i < n; i++) {
+            filter.add(filter.offsets(i));
+        }
+        for (long i = 0; i < n; i++) {
+            assertTrue(filter.mightContain(i));
+        }
+        int falsePositives = 0;
+        for (long i = n; i < 2L * n; i++) {
+            if (filter.mightContain(i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < n * 0.02, "误判" + falsePositives + "次");
+    }
+    
+    @Test
+    void mergeReadsRedisBitOrder() {
+        LocalBloomFilter filter = new LocalBloomFilter(1_000, 0.01);
+        long[] offsets = filter.offsets("shop:1");
+        // redis SETBIT：offset 0 为第一个字节的最高位
+        byte[] bitmap = new byte[(int) ((filter.numBits() + 7) / 8)];
+        for (long offset : offsets) {
+            bitmap[(int) (offset >>> 3)] |= (byte) (0x80 >>> (offset & 7));
+        }
+        
+        assertFalse(filter.mightContain("shop:1"));
+        filter.merge(bitmap);
+        assertTrue(filter.mightContain("shop:1"));
+    }
+    
+    @Test
+    void rebuildKeepsConcurrentAdds() {
+        LocalBloomFilter filter = new LocalBloomFilter(1_000, 0.01);
+        filter.add(filter.offsets("deleted"));
+        
+        try (LocalBloomFilter.Rebuild rebuild = filter.rebuild()) {
+            rebuild.add(filter.offsets("loaded"));
+            // 重建期间新增
+            filter.add(filter.offsets("added"));
+            // 提交前仍使用旧的bit数组
+            assertTrue(filter.mightContain("deleted"));
+            assertFalse(filter.mightContain("loaded"));
+            rebuild.commit();
+        }
+        
+        assertFalse(filter.mightContain("deleted"));
+        assertTrue(filter.mightContain("loaded"));
+        assertTrue(filter.mightContain("added"));
+    }
+    
+    @Test
+    void abandonedRebuildKeepsOldBits() {
+        LocalBloomFilter filter = new LocalBloomFilter(1_000, 0.01);
+        filter.add(filter.offsets("kept"));
+        
+        try (LocalBloomFilter.Rebuild rebuild = filter.rebuild()) {
+            rebuild.add(filter.offsets("loaded"));
+        }
+        filter.add(filter.offsets("after"));
+        
+        assertTrue(filter.mightContain("kept"));
+        assertTrue(filter.mightContain("after"));
+        assertFalse(filter.mightContain("loaded"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.zayn.dianping.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GCRA限流：突发容量、等待时间、本地预过滤、redis不可用时放行
+ * redis用内存实现代替，计算和 lua/rate_limit.lua 一致
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午11:07
+ */
+class RateLimiterTest {
+    private final GcraRedis redis = new GcraRedis();
+    
+    @Test
+    void allowsBurstThenReturnsWait() {
+        RateLimiter limiter = new RateLimiter(redis, true, 1000);
+        
+        // 每秒5次，间隔200毫秒，突发容量为一个周期
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire("login:ip", "1.1.1.1", 5, 1000));
+        }
+        long waitMillis = limiter.tryAcquire("login:ip", "1.1.1.1", 5, 1000);
+        assertTrue(waitMillis > 150 && waitMillis <= 200, "等待" + waitMillis + "毫秒");
+        // 其他客户端不受影响
+        assertEquals(0, limiter.tryAcquire("login:ip", "2.2.2.2", 5, 1000));
+    }
+    
+    @Test
+    void rejectedClientIsFilteredLocally() {
+        RateLimiter limiter = new RateLimiter(redis, true, 1000);
+        assertEquals(0, limiter.tryAcquire("code:phone", "13800000000", 1, 60_000));
+        assertTrue(limiter.tryAcquire("code:phone", "13800000000", 1, 60_000) > 0);
+        int calls = redis.calls;
+        
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire("code:phone", "13800000000", 1, 60_000) > 0);
+        }
+        assertEquals(calls, redis.calls);
+        Map<?, ?> stats = (Map<?, ?>) limiter.snapshot().get("code:phone");
+        assertEquals(1L, stats.get("allowed"));
+        assertEquals(1L, stats.get("rejected_redis"));
+        assertEquals(10L, stats.get("rejected_local"));
+    }
+    
+    @Test
+    void intervalIsAtLeastOneMillisecond() {
+        RateLimiter limiter = new RateLimiter(redis, true, 1000);
+        limiter.tryAcquire("seckill:ip", "1.1.1.1", 5000, 1000);
+        
+        assertEquals("1", redis.lastInterval);
+    }
+    
+    @Test
+    void redisFailureAllows() {
+        redis.down = true;
+        RateLimiter limiter = new RateLimiter(redis, true, 1000);
+        
+        assertEquals(0, limiter.tryAcquire("login:ip", "1.1.1.1", 1, 1000));
+        assertEquals(0, limiter.tryAcquire("login:ip", "1.1.1.1", 1, 1000));
+        assertEquals(2L, ((Map<?, ?>) limiter.snapshot().get("login:ip")).get("errors"));
+    }
+    
+    @Test
+    void disabledSkipsRedis() {
+        RateLimiter limiter = new RateLimiter(redis, false, 1000);
+        
+        assertEquals(0, limiter.tryAcquire("login:ip", "1.1.1.1", 1, 1000));
+        assertEquals(0, redis.calls);
+    }
+    
+    /**
+     * 内存中的GCRA，每个key保存理论到达时间
+     */
+    private static final class GcraRedis extends StringRedisTemplate {
+        private final Map<String, Long> tats = new HashMap<>();
+        private int calls;
+        private boolean down;
+        private String lastInterval;
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            calls++;
+            if (down) {
+                throw new IllegalStateException("redis不可用");
+            }
+            lastInterval = (String) args[0];
+            long interval = Long.parseLong((String) args[0]);
+            long burst = Long.parseLong((String) args[1]);
+            long now = System.currentTimeMillis();
+            long tat = Math.max(tats.getOrDefault(keys.get(0), now), now);
+            long newTat = tat + interval;
+            long waitMillis = newTat - burst - now;
+            if (waitMillis > 0) {
+                return (T) Long.valueOf(waitMillis);
+            }
+            tats.put(keys.get(0), newTat);
+            return (T) Long.valueOf(0);
+        }
+    }
+}
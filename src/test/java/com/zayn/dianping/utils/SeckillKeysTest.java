@@ -0,0 +1,71 @@
+package com.zayn.dianping.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 秒杀key：分桶路由、库存拆分、分片和不分片的key格式
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午11:06
+ */
+class SeckillKeysTest {
+    
+    @Test
+    void unshardedKeysKeepOriginalFormat() {
+        SeckillKeys keys = new SeckillKeys(1);
+        
+        assertFalse(keys.sharded());
+        assertEquals(0, keys.bucketOf(12345L));
+        assertEquals("seckill:voucher:7", keys.voucherKey(7L, 0));
+        assertEquals("seckill:order:7", keys.orderKey(7L, 0));
+        assertEquals(List.of("stream:orders"), keys.streamKeys());
+        assertArrayEquals(new int[]{100}, keys.split(100));
+    }
+    
+    @Test
+    void nonPositiveShardsMeanOne() {
+        assertEquals(1, new SeckillKeys(0).shards());
+        assertEquals(1, new SeckillKeys(-3).shards());
+    }
+    
+    @Test
+    void shardedKeysOfOneBucketShareHashTag() {
+        SeckillKeys keys = new SeckillKeys(4);
+        int bucket = keys.bucketOf(10L);
+        
+        assertEquals(2, bucket);
+        String tag = "{seckill:2}";
+        assertTrue(keys.voucherKey(7L, bucket).contains(tag));
+        assertTrue(keys.orderKey(7L, bucket).contains(tag));
+        assertTrue(keys.statusKey(99L, bucket).contains(tag));
+        assertTrue(keys.streamKey(bucket).contains(tag));
+        assertNotEquals(keys.voucherKey(7L, 1), keys.voucherKey(7L, 2));
+        assertEquals(4, keys.streamKeys().size());
+    }
+    
+    @Test
+    void bucketOfIsStableAndInRange() {
+        SeckillKeys keys = new SeckillKeys(3);
+        for (long userId = -10; userId < 10; userId++) {
+            int bucket = keys.bucketOf(userId);
+            assertTrue(bucket >= 0 && bucket < 3);
+            assertEquals(bucket, keys.bucketOf(userId));
+        }
+        assertEquals((int) (Long.MAX_VALUE % 3), keys.bucketOf(Long.MAX_VALUE));
+    }
+    
+    @Test
+    void splitSpreadsRemainderToFirstBuckets() {
+        SeckillKeys keys = new SeckillKeys(4);
+        
+        assertArrayEquals(new int[]{3, 3, 2, 2}, keys.split(10));
+        assertArrayEquals(new int[]{1, 1, 0, 0}, keys.split(2));
+        assertArrayEquals(new int[]{0, 0, 0, 0}, keys.split(0));
+        assertEquals(1001, Arrays.stream(keys.split(1001)).sum());
+    }
+}
@@ -0,0 +1,143 @@
+package com.zayn.dianping.utils;
+
+import cn.hutool.core.codec.Base64;
+import com.zayn.dianping.domain.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 无状态token：签发、校验、篡改、过期、登出、撤销用户全部token
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午11:06
+ */
+class SignedTokensTest {
+    private static final String SECRET = "unit-test-secret-unit-test-secret";
+    
+    private final MemoryRevocations revocations = new MemoryRevocations();
+    private final SignedTokens tokens = new SignedTokens(revocations, SignedTokens.MODE, SECRET, 3600);
+    
+    @Test
+    void issueAndVerify() {
+        UserDTO user = user();
+        UserDTO verified = tokens.verify(tokens.issue(user));
+        
+        assertEquals(user, verified);
+        assertNotSame(user, verified);
+    }
+    
+    @Test
+    void tamperedPayloadOrSignatureIsRejected() {
+        String token = tokens.issue(user());
+        int dot = token.indexOf('.');
+        byte[] payload = Base64.decode(token.substring(0, dot));
+        byte[] signature = Base64.decode(token.substring(dot + 1));
+        
+        byte[] otherPayload = payload.clone();
+        otherPayload[otherPayload.length - 1] ^= 1;
+        assertNull(tokens.verify(Base64.encodeUrlSafe(otherPayload) + token.substring(dot)));
+        
+        byte[] otherSignature = signature.clone();
+        otherSignature[0] ^= 1;
+        assertNull(tokens.verify(token.substring(0, dot + 1) + Base64.encodeUrlSafe(otherSignature)));
+    }
+    
+    @Test
+    void malformedTokenIsRejected() {
+        assertNull(tokens.verify(""));
+        assertNull(tokens.verify("."));
+        assertNull(tokens.verify("abc"));
+        assertNull(tokens.verify("abc."));
+        assertNull(tokens.verify(".abc"));
+        assertNull(tokens.verify("a.b"));
+    }
+    
+    @Test
+    void otherSecretIsRejected() {
+        SignedTokens other = new SignedTokens(revocations, SignedTokens.MODE, SECRET.replace('u', 'x'), 3600);
+        
+        assertNull(other.verify(tokens.issue(user())));
+    }
+    
+    @Test
+    void expiredTokenIsRejected() {
+        SignedTokens expired = new SignedTokens(revocations, SignedTokens.MODE, SECRET, 0);
+        
+        assertNull(expired.verify(expired.issue(user())));
+    }
+    
+    @Test
+    void revokedTokenIsRejected() {
+        String token = tokens.issue(user());
+        String other = tokens.issue(user());
+        tokens.revoke(token);
+        
+        assertNull(tokens.verify(token));
+        assertNotNull(tokens.verify(other));
+    }
+    
+    @Test
+    void revokeAllOnlyAffectsEarlierTokens() throws InterruptedException {
+        String before = tokens.issue(user());
+        Thread.sleep(2);
+        tokens.revokeAll(user().getId());
+        Thread.sleep(2);
+        // 同一秒内撤销之后签发的token仍然有效
+        String after = tokens.issue(user());
+        
+        assertNull(tokens.verify(before));
+        assertNotNull(tokens.verify(after));
+    }
+    
+    @Test
+    void shortSecretFails() {
+        assertThrows(IllegalStateException.class, () -> new SignedTokens(revocations, SignedTokens.MODE, "short", 3600));
+    }
+    
+    @Test
+    void redisModeNeedsNoSecret() {
+        assertFalse(new SignedTokens(revocations, "redis", "", 3600).enabled());
+    }
+    
+    private static UserDTO user() {
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("用户_abc");
+        return user;
+    }
+    
+    /**
+     * 内存中的撤销列表，判断规则和 TokenRevocations 一致，不访问redis
+     */
+    private static final class MemoryRevocations extends TokenRevocations {
+        private final Set<Long> revokedTokens = new HashSet<>();
+        private final Map<Long, Long> revokedUsers = new HashMap<>();
+        
+        private MemoryRevocations() {
+            super(new StringRedisTemplate(), SignedTokens.MODE, 1000, 0.01, 60, 3600);
+        }
+        
+        @Override
+        public void revoke(long tokenId, long expiresAt) {
+            revokedTokens.add(tokenId);
+        }
+        
+        @Override
+        public void revokeUser(Long userId, long revokedAt) {
+            revokedUsers.merge(userId, revokedAt, Math::max);
+        }
+        
+        @Override
+        public boolean isRevoked(long tokenId, Long userId, long issuedAt) {
+            Long revokedAt = revokedUsers.get(userId);
+            return revokedTokens.contains(tokenId) || revokedAt != null && issuedAt < revokedAt;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.zayn.dianping.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 请求合并：同key只加载一次、异常传递、等待超时
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午11:08
+ */
+class SingleFlightTest {
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    void concurrentCallsShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> singleFlight.execute("shop:1", () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "shop";
+        }, 1000));
+        assertTrue(loading.await(1, TimeUnit.SECONDS));
+        
+        List<Future<String>> waiters = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            waiters.add(executor.submit(() -> singleFlight.execute("shop:1", () -> {
+                loads.incrementAndGet();
+                return "other";
+            }, 1000)));
+        }
+        // 等待者进入等待后再放行
+        Thread.sleep(50);
+        release.countDown();
+        
+        assertEquals("shop", leader.get(1, TimeUnit.SECONDS));
+        for (Future<String> waiter : waiters) {
+            assertEquals("shop", waiter.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+    }
+    
+    @Test
+    void finishedCallIsNotReused() {
+        AtomicInteger loads = new AtomicInteger();
+        
+        assertEquals(1, singleFlight.execute("shop:1", loads::incrementAndGet, 1000));
+        assertEquals(2, singleFlight.execute("shop:1", loads::incrementAndGet, 1000));
+        assertEquals(3, singleFlight.execute("shop:2", loads::incrementAndGet, 1000));
+    }
+    
+    @Test
+    void exceptionReachesLeaderAndWaiters() throws Exception {
+        IllegalStateException failure = new IllegalStateException("数据库不可用");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Object> leader = executor.submit(() -> singleFlight.execute("shop:1", () -> {
+            loading.countDown();
+            await(release);
+            throw failure;
+        }, 1000));
+        assertTrue(loading.await(1, TimeUnit.SECONDS));
+        Future<Object> waiter = executor.submit(() -> singleFlight.execute("shop:1", () -> "other", 1000));
+        Thread.sleep(50);
+        release.countDown();
+        
+        assertSame(failure, causeOf(leader));
+        assertSame(failure, causeOf(waiter));
+        // 失败后不保留，下次重新加载
+        assertEquals("ok", singleFlight.execute("shop:1", () -> "ok", 1000));
+    }
+    
+    @Test
+    void waiterTimesOut() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> singleFlight.execute("shop:1", () -> {
+            loading.countDown();
+            await(release);
+            return "shop";
+        }, 1000));
+        assertTrue(loading.await(1, TimeUnit.SECONDS));
+        
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> singleFlight.execute("shop:1", () -> "other", 20));
+        assertTrue(e.getCause() instanceof TimeoutException);
+        
+        release.countDown();
+        assertEquals("shop", leader.get(1, TimeUnit.SECONDS));
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static Throwable causeOf(Future<?> future) throws Exception {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        return e.getCause();
+    }
+}
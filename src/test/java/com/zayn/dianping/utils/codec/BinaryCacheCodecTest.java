@@ -0,0 +1,149 @@
+package com.zayn.dianping.utils.codec;
+
+import cn.hutool.core.lang.TypeReference;
+import com.zayn.dianping.domain.dto.UserDTO;
+import com.zayn.dianping.entity.Shop;
+import com.zayn.dianping.entity.ShopType;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 二进制编解码：往返、空值字段、List、字段版本不一致
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午11:04
+ */
+class BinaryCacheCodecTest {
+    private static final Type SHOP_TYPE_LIST = new TypeReference<List<ShopType>>() {
+    }.getType();
+    
+    private final BinaryCacheCodec codec = new BinaryCacheCodec();
+    
+    @Test
+    void writerAndReaderRoundTrip() {
+        BinaryWriter writer = new BinaryWriter(1);
+        writer.writeVarLong(0);
+        writer.writeVarLong(-1);
+        writer.writeVarLong(Long.MAX_VALUE);
+        writer.writeVarLong(Long.MIN_VALUE);
+        writer.writeLong(null);
+        writer.writeLong(300L);
+        writer.writeInt(Integer.MIN_VALUE);
+        writer.writeDouble(null);
+        writer.writeDouble(-0.5);
+        writer.writeString(null);
+        writer.writeString("");
+        writer.writeString("点评 😀");
+        LocalDateTime time = LocalDateTime.of(2026, 10, 21, 14, 0, 0, 123_000_000);
+        writer.writeDateTime(time);
+        writer.writeDateTime(null);
+        
+        BinaryReader reader = new BinaryReader(writer.toByteArray(), 0);
+        assertEquals(0, reader.readVarLong());
+        assertEquals(-1, reader.readVarLong());
+        assertEquals(Long.MAX_VALUE, reader.readVarLong());
+        assertEquals(Long.MIN_VALUE, reader.readVarLong());
+        assertNull(reader.readLong());
+        assertEquals(300L, reader.readLong());
+        assertEquals(Integer.MIN_VALUE, reader.readInt());
+        assertNull(reader.readDouble());
+        assertEquals(-0.5, reader.readDouble());
+        assertNull(reader.readString());
+        assertEquals("", reader.readString());
+        assertEquals("点评 😀", reader.readString());
+        assertEquals(time, reader.readDateTime());
+        assertNull(reader.readDateTime());
+    }
+    
+    @Test
+    void smallValuesUseOneByte() {
+        BinaryWriter writer = new BinaryWriter(16);
+        writer.writeVarLong(63);
+        writer.writeVarLong(-64);
+        assertEquals(2, writer.toByteArray().length);
+    }
+    
+    @Test
+    void shopRoundTripKeepsNullFields() {
+        Shop shop = new Shop()
+                .setId(1L)
+                .setName("茶餐厅")
+                .setTypeId(2L)
+                .setX(120.15)
+                .setY(30.28)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setScore(37)
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39));
+        
+        Shop decoded = codec.decode(codec.encode(shop), 0, Shop.class);
+        
+        assertEquals(shop, decoded);
+        assertNull(decoded.getImages());
+        assertNull(decoded.getComments());
+        assertNull(decoded.getUpdateTime());
+    }
+    
+    @Test
+    void userRoundTrip() {
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("user_abc123");
+        
+        assertEquals(user, codec.decode(codec.encode(user), 0, UserDTO.class));
+    }
+    
+    @Test
+    void listRoundTrip() {
+        List<ShopType> types = List.of(
+                new ShopType().setId(1L).setName("美食").setIcon("/types/ms.png").setSort(1),
+                new ShopType().setId(2L).setName("KTV").setSort(2));
+        
+        List<ShopType> decoded = codec.decode(codec.encode(types), 0, SHOP_TYPE_LIST);
+        
+        assertEquals(types, decoded);
+        assertEquals(List.of(), codec.decode(codec.encode(List.of()), 0, SHOP_TYPE_LIST));
+    }
+    
+    @Test
+    void decodeFromOffset() {
+        UserDTO user = new UserDTO();
+        user.setId(7L);
+        byte[] encoded = codec.encode(user);
+        byte[] withHeader = new byte[encoded.length + 2];
+        System.arraycopy(encoded, 0, withHeader, 2, encoded.length);
+        
+        assertEquals(user, codec.decode(withHeader, 2, UserDTO.class));
+    }
+    
+    @Test
+    void schemaVersionMismatchFails() {
+        UserDTO user = new UserDTO();
+        user.setId(7L);
+        byte[] encoded = codec.encode(user);
+        // 第1个字节为类型，第2个字节为字段版本
+        encoded[1] = (byte) (BinarySchemas.USER_DTO.version() + 1);
+        
+        assertThrows(IllegalStateException.class, () -> codec.decode(encoded, 0, UserDTO.class));
+    }
+    
+    @Test
+    void supportsOnlySchemaTypes() {
+        assertTrue(codec.supports(new Shop()));
+        assertTrue(codec.supports(List.of(new ShopType())));
+        assertTrue(codec.supports(List.of()));
+        assertFalse(codec.supports("shop"));
+        assertFalse(codec.supports(List.of(1L)));
+        // null元素和混合类型交给JSON
+        assertFalse(codec.supports(Arrays.asList(null, new Shop())));
+        assertFalse(codec.supports(Arrays.asList(new Shop(), null)));
+        assertFalse(codec.supports(List.of(new Shop(), new ShopType())));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(new byte[]{0, 1}, 0, String.class));
+    }
+}
@@ -0,0 +1,76 @@
+package com.zayn.dianping.utils.codec;
+
+import cn.hutool.json.JSONUtil;
+import com.zayn.dianping.domain.dto.UserDTO;
+import com.zayn.dianping.entity.RedisData;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 编码头部：按头部选择解码器、不支持的类型回退、没有头部的旧数据、逻辑过期
+ *
+ * @author zayn
+ * * @date 2026/10/18/上午11:04
+ */
+class CacheCodecsTest {
+    private final CacheCodecs codecs = new CacheCodecs(
+            List.of(new HutoolJsonCacheCodec(), new Fastjson2CacheCodec(), new BinaryCacheCodec()),
+            BinaryCacheCodec.NAME);
+    
+    @Test
+    void headerSelectsCodec() {
+        UserDTO user = user();
+        byte[] bytes = codecs.encode(user);
+        
+        assertEquals(BinaryCacheCodec.ID, bytes[0]);
+        assertEquals(user, codecs.decode(bytes, UserDTO.class));
+    }
+    
+    @Test
+    void unsupportedTypeFallsBackToJson() {
+        Map<String, Object> value = Map.of("id", 1);
+        byte[] bytes = codecs.encode(value);
+        
+        assertEquals(Fastjson2CacheCodec.ID, bytes[0]);
+        assertEquals(1, ((Map<?, ?>) codecs.decode(bytes, Map.class)).get("id"));
+    }
+    
+    @Test
+    void legacyJsonWithoutHeader() {
+        UserDTO user = user();
+        byte[] legacy = JSONUtil.toJsonStr(user).getBytes(StandardCharsets.UTF_8);
+        
+        assertEquals(user, codecs.decode(legacy, UserDTO.class));
+    }
+    
+    @Test
+    void logicalExpireRoundTrip() {
+        UserDTO user = user();
+        LocalDateTime expireTime = LocalDateTime.of(2026, 10, 21, 14, 30, 0);
+        byte[] bytes = codecs.encodeLogical(user, expireTime);
+        
+        RedisData redisData = codecs.decodeLogical(bytes, UserDTO.class);
+        assertEquals(expireTime, redisData.getExpireTime());
+        assertEquals(user, redisData.getData());
+        assertEquals(expireTime, codecs.logicalExpireTime(bytes));
+    }
+    
+    @Test
+    void unknownWriterFails() {
+        assertThrows(IllegalStateException.class, () -> new CacheCodecs(List.of(new BinaryCacheCodec()), "protobuf"));
+    }
+    
+    private static UserDTO user() {
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("user_abc123");
+        user.setIcon("/imgs/icons/user.jpg");
+        return user;
+    }
+}